@@ -0,0 +1,120 @@
+package android.graphics;
+
+/**
+ * A plain JVM stand-in for android.graphics.Rect, whose android.jar
+ * stub throws. Only what the pipeline uses, with the same behavior.
+ */
+public final class Rect {
+	public int left;
+	public int top;
+	public int right;
+	public int bottom;
+
+	public Rect() {
+	}
+
+	public Rect(int left, int top, int right, int bottom) {
+		set(left, top, right, bottom);
+	}
+
+	public Rect(Rect r) {
+		set(r);
+	}
+
+	public final int width() {
+		return right - left;
+	}
+
+	public final int height() {
+		return bottom - top;
+	}
+
+	public final int centerX() {
+		return (left + right) >> 1;
+	}
+
+	public final int centerY() {
+		return (top + bottom) >> 1;
+	}
+
+	public final boolean isEmpty() {
+		return left >= right || top >= bottom;
+	}
+
+	public void set(int left, int top, int right, int bottom) {
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+	}
+
+	public void set(Rect src) {
+		set(src.left, src.top, src.right, src.bottom);
+	}
+
+	public void offset(int dx, int dy) {
+		left += dx;
+		top += dy;
+		right += dx;
+		bottom += dy;
+	}
+
+	public boolean intersect(int left, int top, int right, int bottom) {
+		if(this.left < right && left < this.right && this.top < bottom && top < this.bottom){
+			if(this.left < left) this.left = left;
+			if(this.top < top) this.top = top;
+			if(this.right > right) this.right = right;
+			if(this.bottom > bottom) this.bottom = bottom;
+			return true;
+		}
+		return false;
+	}
+
+	public boolean intersect(Rect r) {
+		return intersect(r.left, r.top, r.right, r.bottom);
+	}
+
+	public static boolean intersects(Rect a, Rect b) {
+		return a.left < b.right && b.left < a.right && a.top < b.bottom && b.top < a.bottom;
+	}
+
+	public void union(int left, int top, int right, int bottom) {
+		if(left < right && top < bottom){
+			if(this.left < this.right && this.top < this.bottom){
+				if(this.left > left) this.left = left;
+				if(this.top > top) this.top = top;
+				if(this.right < right) this.right = right;
+				if(this.bottom < bottom) this.bottom = bottom;
+			}else{
+				set(left, top, right, bottom);
+			}
+		}
+	}
+
+	public void union(Rect r) {
+		union(r.left, r.top, r.right, r.bottom);
+	}
+
+	public boolean contains(int x, int y) {
+		return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof Rect)){
+			return false;
+		}
+		Rect r = (Rect) o;
+		return left == r.left && top == r.top && right == r.right && bottom == r.bottom;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * (31 * left + top) + right) + bottom;
+	}
+
+	@Override
+	public String toString() {
+		return "Rect(" + left + ", " + top + " - " + right + ", " + bottom + ")";
+	}
+}
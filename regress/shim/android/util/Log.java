@@ -0,0 +1,57 @@
+package android.util;
+
+/**
+ * A plain JVM stand-in for android.util.Log, whose android.jar
+ * stub throws. Warnings and errors go to stderr, the rest is
+ * dropped.
+ */
+public final class Log {
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+
+	private Log() {
+	}
+
+	public static boolean isLoggable(String tag, int level) {
+		return level >= WARN;
+	}
+
+	public static int v(String tag, String msg) {
+		return 0;
+	}
+
+	public static int d(String tag, String msg) {
+		return 0;
+	}
+
+	public static int i(String tag, String msg) {
+		return 0;
+	}
+
+	public static int w(String tag, String msg) {
+		return w(tag, msg, null);
+	}
+
+	public static int w(String tag, String msg, Throwable tr) {
+		return print("W", tag, msg, tr);
+	}
+
+	public static int e(String tag, String msg) {
+		return e(tag, msg, null);
+	}
+
+	public static int e(String tag, String msg, Throwable tr) {
+		return print("E", tag, msg, tr);
+	}
+
+	private static int print(String level, String tag, String msg, Throwable tr) {
+		System.err.println(level + "/" + tag + ": " + msg);
+		if(tr != null){
+			tr.printStackTrace();
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,382 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import android.graphics.Rect;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.ocr.AdaptiveRecognizer;
+import com.flugtag.ocr.DebugImageWriter;
+import com.flugtag.ocr.ImageDecoder;
+import com.flugtag.ocr.LineListener;
+import com.flugtag.ocr.LineResult;
+import com.flugtag.ocr.OcrEngine;
+import com.flugtag.ocr.ProfileSelector;
+import com.flugtag.ocr.ReceiptReader;
+import com.flugtag.ocr.RecognitionProfile;
+import com.flugtag.ocr.RecognitionResult;
+import com.flugtag.ocr.TextRegions;
+import com.flugtag.regress.PipelineDriver;
+import com.flugtag.regress.RecordingEngine;
+import com.flugtag.regress.RegressionHarness;
+import com.flugtag.regress.Replay;
+
+/**
+ * Writes the checked in corpus: receipt images rendered with AWT,
+ * their expected text, and recordings made by running the real
+ * ReceiptReader over a RecordingEngine wrapped around a made up
+ * native engine. That engine "detects" the rendered rows, "reads"
+ * the words whose centers fall in a box, and garbles the rows
+ * marked weak unless the retry chain that fixes them is used.
+ * Its costs are fixed figures, not device measurements.
+ *
+ * Recordings made on a device with the record tool replace these.
+ *
+ * <pre>
+ * java -cp out SyntheticCorpus regress/corpus
+ * </pre>
+ */
+public class SyntheticCorpus {
+	private static final int WIDTH = 480;
+	private static final int ROW_HEIGHT = 30;
+	private static final int MARGIN = 20;
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 16);
+
+	/** One printed row: an item and its price, or a single line. */
+	static class Row {
+		final String label;
+		final String price;
+		final String fixedBy;
+		final boolean joined;
+
+		/**
+		 * @param fixedBy Null for a clean row, the chain that reads
+		 *        it well for a weak one, "" if none does
+		 * @param joined True if the detector takes both columns as one box
+		 */
+		Row(String label, String price, String fixedBy, boolean joined) {
+			this.label = label;
+			this.price = price;
+			this.fixedBy = fixedBy;
+			this.joined = joined;
+		}
+	}
+
+	/** A word as printed, with its bounds on the page. */
+	static class Word {
+		final String text;
+		final Rect box;
+		final Row row;
+
+		Word(String text, Rect box, Row row) {
+			this.text = text;
+			this.box = box;
+			this.row = row;
+		}
+	}
+
+	static Row line(String text) {
+		return new Row(text, null, null, false);
+	}
+
+	static Row item(String label, String price) {
+		return new Row(label, price, null, false);
+	}
+
+	static Row weak(String label, String price, String fixedBy) {
+		return new Row(label, price, fixedBy, false);
+	}
+
+	static Row joined(String label, String price) {
+		return new Row(label, price, null, true);
+	}
+
+	public static void main(String[] args) throws IOException {
+		File root = new File(args.length > 0 ? args[0] : "regress/corpus");
+
+		File lines = new File(root, "lines");
+		write(lines, "r01", false, new Row[] {
+				line("CORNER MARKET"),
+				line("12 MAIN STREET"),
+				line("2026-03-14 10:42"),
+				item("MILK 2L", "2.49"),
+				item("BREAD WHOLEWHEAT", "3.10"),
+				item("EGGS DOZEN", "4.25"),
+				item("BANANAS 1.2KG", "1.68"),
+				item("SUBTOTAL", "11.52"),
+				item("TAX", "0.92"),
+				weak("TOTAL", "12.44", "otsu"),
+				item("VISA ****1234", "12.44"),
+				line("THANK YOU"),
+		});
+		write(lines, "r02", false, new Row[] {
+				line("FRESH FOODS"),
+				line("ORDER 5531"),
+				item("COFFEE BEANS", "8.99"),
+				weak("OAT MILK 1L", "2.35", "unsharp"),
+				item("CHEDDAR 200G", "3.79"),
+				item("TOMATOES", "2.10"),
+				item("TOTAL", "17.23"),
+				line("CASH"),
+		});
+		write(lines, "r03", false, new Row[] {
+				line("HARDWARE DEPOT"),
+				item("WOOD SCREWS 4X40", "5.60"),
+				weak("SANDPAPER P120 X5", "4.15", ""),
+				item("MASKING TAPE", "2.90"),
+				item("TOTAL", "12.65"),
+				line("RETURNS WITHIN 30 DAYS"),
+		});
+
+		File columns = new File(root, "columns");
+		writeSettings(columns);
+		write(columns, "c01", true, new Row[] {
+				line("CORNER MARKET"),
+				line("2026-04-02 18:05"),
+				item("APPLES 1KG", "3.20"),
+				item("PASTA 500G", "1.45"),
+				item("OLIVE OIL", "7.99"),
+				item("RICE 1KG", "2.60"),
+				item("TOTAL", "15.24"),
+				line("SAVE 10% WITH THE CLUB CARD TODAY"),
+				line("THANK YOU"),
+		});
+		write(columns, "c02", true, new Row[] {
+				line("FRESH FOODS"),
+				item("YOGURT 4PK", "3.49"),
+				item("GRANOLA", "4.99"),
+				item("BLUEBERRIES", "3.75"),
+				joined("SUBTOTAL", "12.23"),
+				item("TAX", "0.98"),
+				item("TOTAL", "13.21"),
+				line("CARD"),
+		});
+	}
+
+	private static void writeSettings(File dir) throws IOException {
+		dir.mkdirs();
+		Writer out = new OutputStreamWriter(new java.io.FileOutputStream(
+				new File(dir, PipelineDriver.SETTINGS_FILE)), "UTF-8");
+		try {
+			out.write("splitColumns=true\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void write(File dir, String name, boolean splitColumns, Row[] rows)
+			throws IOException {
+		dir.mkdirs();
+		int height = 2 * MARGIN + rows.length * ROW_HEIGHT;
+		BufferedImage image = new BufferedImage(WIDTH, height, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, WIDTH, height);
+		g.setColor(Color.BLACK);
+		g.setFont(FONT);
+		FontMetrics fm = g.getFontMetrics();
+
+		List<Word> words = new ArrayList<Word>();
+		List<Rect> boxes = new ArrayList<Rect>();
+		StringBuilder expected = new StringBuilder();
+		for(int i=0;i<rows.length;i++){
+			Row row = rows[i];
+			int baseline = MARGIN + i * ROW_HEIGHT + fm.getAscent();
+			int top = baseline - fm.getAscent() + 2;
+			int bottom = baseline + fm.getDescent() - 2;
+
+			int labelX = row.price != null ? MARGIN : (WIDTH - fm.stringWidth(row.label)) / 2;
+			Rect label = draw(g, fm, row.label, labelX, baseline, top, bottom, row, words);
+			Rect price = null;
+			if(row.price != null){
+				int priceX = WIDTH - MARGIN - fm.stringWidth(row.price);
+				price = draw(g, fm, row.price, priceX, baseline, top, bottom, row, words);
+			}
+
+			// Without columns the detector takes each row as one line
+			if(price == null){
+				boxes.add(label);
+			}else if(!splitColumns || row.joined){
+				Rect box = new Rect(label);
+				box.union(price);
+				boxes.add(box);
+			}else{
+				boxes.add(label);
+				boxes.add(price);
+			}
+
+			expected.append(row.label);
+			if(row.price != null){
+				expected.append(' ').append(row.price);
+			}
+			expected.append('\n');
+		}
+		g.dispose();
+
+		final File jpg = new File(dir, name + ".jpg");
+		ImageIO.write(image, "jpg", jpg);
+		Writer out = new OutputStreamWriter(new java.io.FileOutputStream(
+				new File(dir, name + RegressionHarness.EXPECTED_EXTENSION)), "UTF-8");
+		try {
+			out.write(expected.toString());
+		} finally {
+			out.close();
+		}
+
+		RecordingEngine recording = new RecordingEngine(
+				new MadeUpEngine(WIDTH, height, boxes.toArray(new Rect[boxes.size()]), words));
+		ReceiptReader reader = new ReceiptReader(recording, null);
+		reader.setSplitColumns(splitColumns);
+		reader.read(new ImageDecoder.Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return new FileInputStream(jpg);
+			}
+		}, null);
+		recording.save(new File(dir, name + Replay.EXTENSION));
+		System.out.println("Wrote " + jpg);
+	}
+
+	/**
+	 * Draw each word of some text and keep its bounds.
+	 *
+	 * @return the bounds of the whole text
+	 */
+	private static Rect draw(Graphics2D g, FontMetrics fm, String text, int x, int baseline,
+			int top, int bottom, Row row, List<Word> words) {
+		g.drawString(text, x, baseline);
+		int start = x;
+		int wordX = x;
+		for(String word : text.split(" ")){
+			int width = fm.stringWidth(word);
+			words.add(new Word(word, new Rect(wordX, top, wordX + width, bottom), row));
+			wordX += width + fm.stringWidth(" ");
+		}
+		return new Rect(start, top, x + fm.stringWidth(text), bottom);
+	}
+
+	/**
+	 * The native stages as made up from the rendered layout.
+	 */
+	static class MadeUpEngine implements OcrEngine {
+		private final int width;
+		private final int height;
+		private final Rect[] boxes;
+		private final List<Word> words;
+
+		MadeUpEngine(int width, int height, Rect[] boxes, List<Word> words) {
+			this.width = width;
+			this.height = height;
+			this.boxes = boxes;
+			this.words = words;
+		}
+
+		@Override
+		public void setDebugImageWriter(DebugImageWriter debug) {
+		}
+
+		@Override
+		public String getSignature() {
+			return "synthetic";
+		}
+
+		@Override
+		public RecognitionProfile getProfile() {
+			return RecognitionProfile.RECEIPT_FAST;
+		}
+
+		@Override
+		public TextRegions decode(ImageDecoder.Source source) throws IOException {
+			spend(30, 1, MetricsRegistry.DECODE, 28);
+			return new TextRegions(TextRegions.DECODED, width, height, 8, new Rect[0]);
+		}
+
+		@Override
+		public TextRegions detect(TextRegions decoded) {
+			spend(40, 2, MetricsRegistry.ADAPTIVE_MAP, 38);
+			spend(20, 1, MetricsRegistry.DESKEW, 19);
+			spend(65, 1, MetricsRegistry.DETECT, 63);
+			return new TextRegions(TextRegions.DETECTED, width, height, 8, boxes);
+		}
+
+		@Override
+		public TextRegions retry(TextRegions regions, AdaptiveRecognizer.Chain chain, Rect[] boxes) {
+			spend(16, 2, MetricsRegistry.THRESHOLD, 15);
+			return new TextRegions(chain.getName(), width, height, 8, boxes);
+		}
+
+		@Override
+		public RecognitionResult recognize(TextRegions regions, LineListener listener,
+				ProfileSelector selector) {
+			LineResult[] lines = new LineResult[regions.size()];
+			for(int i=0;i<lines.length;i++){
+				Rect box = regions.getBox(i);
+				// Reading takes longer the wider the box
+				int millis = 8 + box.width() / 16;
+				spend(millis, 0, MetricsRegistry.RECOGNIZE_LINE, millis - 1);
+				lines[i] = read(i, box, regions.getPageName());
+				if(listener != null){
+					listener.onLineRecognized(lines[i]);
+				}
+			}
+			return new RecognitionResult(lines);
+		}
+
+		private LineResult read(int index, Rect box, String pageName) {
+			StringBuilder text = new StringBuilder();
+			List<Integer> confidences = new ArrayList<Integer>();
+			for(Word word : words){
+				Rect w = word.box;
+				if(w.centerX() < box.left || w.centerX() >= box.right
+						|| w.centerY() < box.top || w.centerY() >= box.bottom){
+					continue;
+				}
+				boolean clean = word.row.fixedBy == null || word.row.fixedBy.equals(pageName);
+				if(text.length() > 0){
+					text.append(' ');
+				}
+				text.append(clean ? word.text : garble(word.text));
+				confidences.add(clean ? 84 + Math.abs(word.text.hashCode()) % 12 : 31 + word.text.length() % 7);
+			}
+
+			int[] words = new int[confidences.size()];
+			int sum = 0;
+			for(int i=0;i<words.length;i++){
+				words[i] = confidences.get(i);
+				sum += words[i];
+			}
+			return new LineResult(index, text.toString(), words.length > 0 ? sum / words.length : 0,
+					box, words);
+		}
+
+		private static String garble(String word) {
+			return word.replace('O', '0').replace('S', '5').replace('1', 'l').replace('A', '4')
+					.replace('.', ',');
+		}
+
+		private static void spend(long millis, int allocations, String stage, long stageMillis) {
+			MetricsRegistry metrics = MetricsRegistry.getDefault();
+			metrics.timer(stage).record(stageMillis * 1000);
+			metrics.counter(MetricsRegistry.NATIVE_ALLOCATIONS).add(allocations);
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,449 @@
+package com.flugtag;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.flugtag.ocr.FrameGate;
+import com.flugtag.ocr.PixPool;
+import com.flugtag.ocr.Preprocessor;
+import com.flugtag.ocr.ReceiptReader;
+import com.flugtag.ocr.RecognitionResult;
+import com.flugtag.ocr.TextRegionTracker;
+import com.flugtag.ocr.TextSlicer;
+import com.googlecode.eyesfree.opticflow.ImageBlur;
+import com.googlecode.leptonica.android.Pix;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.View;
+
+/**
+ * Reads receipts straight from the camera preview, so there is
+ * no round trip through the capture intent.
+ *
+ * Blurred frames are skipped and a frame is only read once the
+ * preview has been sharp for a few frames in a row. Frames that
+ * look like the last one read are skipped by a FrameGate, unless
+ * that one gave no usable result. While a frame is being read,
+ * new frames are dropped instead of queued, so the result is
+ * always of a recent frame. Text areas
+ * are tracked across frames by a TextRegionTracker, so the text
+ * detector only runs on keyframes. The first result confident
+ * enough is returned to the caller in the EXTRA_TEXT extra.
+ *
+ * The camera is opened on its own thread, so its preview frames
+ * are checked there, and frames are read on another. The UI
+ * thread only gets the results.
+ */
+public class CaptureActivity extends Activity implements SurfaceHolder.Callback, Camera.PreviewCallback {
+	private static final String TAG = "CaptureActivity";
+
+	/** The recognized text, in the result Intent. */
+	public static final String EXTRA_TEXT = "com.flugtag.TEXT";
+
+	/** Sharp frames in a row before one is read. */
+	private static final int STABLE_FRAMES = 2;
+	/** The mean confidence a result needs to be accepted. */
+	private static final int MIN_CONFIDENCE = 60;
+	/** One buffer being filled while the other is checked. */
+	private static final int PREVIEW_BUFFERS = 2;
+
+	private HandlerThread cameraThread;
+	private Handler cameraHandler;
+	private HandlerThread readerThread;
+	private Handler readerHandler;
+	private final Handler uiHandler = new Handler();
+
+	private SurfaceHolder holder;
+	private boolean hasSurface;
+
+	// Only touched on the camera thread
+	private Camera camera;
+	private int width;
+	private int height;
+	private final FrameGate gate = new FrameGate(new FrameGate.Parameters());
+	private int sharpFrames;
+
+	private ReceiptReader reader;
+	private TextRegionTracker tracker;
+	private final AtomicBoolean busy = new AtomicBoolean();
+	private volatile boolean snap;
+	private boolean finished;
+	private boolean destroyed;
+
+	/**
+	 * Handle the Activity create.
+	 *
+	 * @see android.app.Activity#onCreate(android.os.Bundle)
+	 * @category Activity
+	 */
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		setContentView(R.layout.capture);
+
+		reader = new ReceiptReader(Preprocessor.create(), null);
+		tracker = new TextRegionTracker(TextSlicer.create(false), new TextRegionTracker.Parameters());
+
+		// Camera callbacks arrive on the looper of the thread that opened it
+		cameraThread = new HandlerThread(TAG + " camera");
+		cameraThread.start();
+		cameraHandler = new Handler(cameraThread.getLooper());
+		readerThread = new HandlerThread(TAG + " reader");
+		readerThread.start();
+		readerHandler = new Handler(readerThread.getLooper());
+
+		SurfaceView surface = (SurfaceView) findViewById(R.id.camSurfaceView);
+		holder = surface.getHolder();
+		holder.addCallback(this);
+		holder.setType(SurfaceHolder.SURFACE_TYPE_PUSH_BUFFERS);
+	}
+
+	/**
+	 * Restart the preview when the surface outlived the pause,
+	 * otherwise it is started once the surface is created.
+	 *
+	 * @see android.app.Activity#onResume()
+	 * @category Activity
+	 */
+	@Override
+	protected void onResume() {
+		super.onResume();
+
+		if(hasSurface){
+			openCamera();
+		}
+	}
+
+	/**
+	 * Stop the preview and release the camera for other apps.
+	 *
+	 * @see android.app.Activity#onPause()
+	 * @category Activity
+	 */
+	@Override
+	protected void onPause() {
+		super.onPause();
+
+		releaseCamera();
+		Log.i(TAG, gate.toString());
+		Log.i(TAG, tracker.toString());
+	}
+
+	/**
+	 * Free the text detector once the frame being read is done,
+	 * and stop the threads.
+	 *
+	 * @see android.app.Activity#onDestroy()
+	 * @category Activity
+	 */
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		destroyed = true;
+		cameraThread.quit();
+		// Queued behind the frame being read, if any
+		readerHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				tracker.release();
+				Looper.myLooper().quit();
+			}
+		});
+	}
+
+	/**
+	 * Handle button click event, read the next frame even if it
+	 * is blurred and accept its result whatever its confidence.
+	 *
+	 * @param btn The click target button
+	 * @category Button Event
+	 */
+	public void snapBtnClick(View btn){
+		snap = true;
+	}
+
+	/**
+	 * Open the camera and start the preview.
+	 *
+	 * @see android.view.SurfaceHolder.Callback#surfaceCreated(android.view.SurfaceHolder)
+	 */
+	@Override
+	public void surfaceCreated(SurfaceHolder holder) {
+		hasSurface = true;
+		openCamera();
+	}
+
+	/**
+	 * @see android.view.SurfaceHolder.Callback#surfaceChanged(android.view.SurfaceHolder, int, int, int)
+	 */
+	@Override
+	public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+	}
+
+	/**
+	 * @see android.view.SurfaceHolder.Callback#surfaceDestroyed(android.view.SurfaceHolder)
+	 */
+	@Override
+	public void surfaceDestroyed(SurfaceHolder holder) {
+		hasSurface = false;
+		releaseCamera();
+	}
+
+	/**
+	 * Open the camera and start the preview on the surface on
+	 * the camera thread, if that is not done already.
+	 */
+	private void openCamera() {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				startPreview();
+			}
+		});
+	}
+
+	/**
+	 * Stop the preview and release the camera, waiting for the
+	 * camera thread so the surface and the camera are free when
+	 * this returns.
+	 */
+	private void releaseCamera() {
+		final CountDownLatch released = new CountDownLatch(1);
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					stopPreview();
+				} finally {
+					released.countDown();
+				}
+			}
+		});
+		try {
+			released.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Open the camera on the camera thread, so its callbacks run there.
+	 */
+	private void startPreview() {
+		if(camera != null){
+			return;
+		}
+
+		try {
+			camera = Camera.open();
+			camera.setPreviewDisplay(holder);
+		} catch (IOException e) {
+			Log.e(TAG, "Failed to show the preview", e);
+			stopPreview();
+			finishOnUiThread();
+			return;
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Failed to open the camera", e);
+			stopPreview();
+			finishOnUiThread();
+			return;
+		}
+
+		Camera.Parameters parameters = camera.getParameters();
+		Camera.Size size = choosePreviewSize(parameters.getSupportedPreviewSizes());
+		if(size != null){
+			parameters.setPreviewSize(size.width, size.height);
+			camera.setParameters(parameters);
+		}
+
+		// Read back, the camera may not have taken the size
+		parameters = camera.getParameters();
+		width = parameters.getPreviewSize().width;
+		height = parameters.getPreviewSize().height;
+		int bufferSize = width * height * ImageFormat.getBitsPerPixel(parameters.getPreviewFormat()) / 8;
+		for(int i = 0; i < PREVIEW_BUFFERS; i++){
+			camera.addCallbackBuffer(new byte[bufferSize]);
+		}
+
+		// Boxes tracked before a pause don't match the new frames
+		tracker.reset();
+		// Nor does the last frame read, the receipt may have moved meanwhile
+		gate.reset();
+		camera.setPreviewCallbackWithBuffer(this);
+		camera.startPreview();
+	}
+
+	/**
+	 * Check a preview frame and read it if it is sharp and
+	 * nothing else is being read. The buffer is handed back to
+	 * the camera before returning either way. Runs on the camera
+	 * thread.
+	 *
+	 * @see android.hardware.Camera.PreviewCallback#onPreviewFrame(byte[], android.hardware.Camera)
+	 */
+	@Override
+	public void onPreviewFrame(byte[] data, Camera camera) {
+		try {
+			// The flow follows the receipt through every frame, read or not
+			tracker.addFrame(data, width, height, SystemClock.uptimeMillis());
+
+			if(busy.get()){
+				// Drop the frame, a queued one would be stale by the time it is read
+				sharpFrames = 0;
+				return;
+			}
+
+			boolean forced = snap;
+			if(!forced){
+				if(ImageBlur.isBlurred(data, width, height)){
+					sharpFrames = 0;
+					return;
+				}
+				if(++sharpFrames < STABLE_FRAMES){
+					return;
+				}
+				// The same view would give the same text
+				if(!gate.accept(data, width, height)){
+					return;
+				}
+			}
+
+			// The Y plane of the NV21 frame is the 8bpp image
+			snap = false;
+			sharpFrames = 0;
+			busy.set(true);
+			Pix pix = PixPool.getDefault().readBytes8(data, width, height);
+			readerHandler.post(new FrameReader(forced, tracker.track(), pix));
+		} finally {
+			camera.addCallbackBuffer(data);
+		}
+	}
+
+	/**
+	 * Pick the largest preview size the pipeline reads without
+	 * downscaling.
+	 *
+	 * @param sizes The supported preview sizes
+	 * @return The size or null if there is none small enough
+	 */
+	private static Camera.Size choosePreviewSize(List<Camera.Size> sizes) {
+		Camera.Size best = null;
+		for(Camera.Size size : sizes){
+			int area = size.width * size.height;
+			if(area <= Preprocessor.MAX_IMAGE_AREA
+					&& (best == null || area > best.width * best.height)){
+				best = size;
+			}
+		}
+		return best;
+	}
+
+	private void stopPreview() {
+		if(camera != null){
+			camera.setPreviewCallbackWithBuffer(null);
+			camera.stopPreview();
+			camera.release();
+			camera = null;
+		}
+	}
+
+	private void finishOnUiThread() {
+		uiHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				finish();
+			}
+		});
+	}
+
+	/**
+	 * Hand the text back to the caller.
+	 */
+	private void deliver(String text) {
+		finished = true;
+		Intent intent = new Intent();
+		intent.putExtra(EXTRA_TEXT, text);
+		setResult(RESULT_OK, intent);
+		finish();
+	}
+
+	/**
+	 * Take the result of a frame on the UI thread.
+	 *
+	 * @param forced True if the result is accepted whatever its confidence
+	 * @param result The lines read or null if the frame failed
+	 */
+	private void onFrameRead(boolean forced, RecognitionResult result) {
+		busy.set(false);
+		if(finished || destroyed){
+			return;
+		}
+
+		if(result != null){
+			String text = result.getText();
+			Log.i(TAG, "Frame read with " + result.getMeanConfidence() + " confidence");
+			if(forced || (result.getMeanConfidence() >= MIN_CONFIDENCE && text.trim().length() > 0)){
+				deliver(text);
+				return;
+			}
+		}
+		// A still view that read badly must be read again, not skipped as seen
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				gate.reset();
+			}
+		});
+	}
+
+	/**
+	 * Reads one frame on the reader thread and posts the result
+	 * to the UI thread.
+	 */
+	private class FrameReader implements Runnable {
+		private final boolean forced;
+		private final TextRegionTracker.Frame frame;
+		private final Pix pix;
+
+		FrameReader(boolean forced, TextRegionTracker.Frame frame, Pix pix) {
+			this.forced = forced;
+			this.frame = frame;
+			this.pix = pix;
+		}
+
+		@Override
+		public void run() {
+			RecognitionResult read;
+			try {
+				read = reader.recognize(pix, null, tracker, frame);
+			} catch (RuntimeException e) {
+				// Lose the frame, not the app, the next one is read instead
+				Log.e(TAG, "Failed to read a frame", e);
+				read = null;
+			}
+
+			final RecognitionResult result = read;
+			uiHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					onFrameRead(forced, result);
+				}
+			});
+		}
+	}
+}
@@ -6,7 +6,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.flugtag.model.CheckItem;
+import com.flugtag.ocr.BatchReport;
+import com.flugtag.ocr.PixPool;
+import com.flugtag.ocr.TessEnginePool;
 import com.flugtag.task.AsyncTaskCompleteListener;
+import com.flugtag.task.BatchOCRTask;
 import com.flugtag.task.LanguageInstallTask;
 import com.flugtag.task.OCRTask;
 
@@ -16,6 +20,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
@@ -26,6 +31,8 @@ public class MainActivity extends Activity {
 	
 	private static final int IMAGE_CAPTURE = 0;
 	private static final int IMAGE_PICK = 1;
+	private static final int LIVE_CAPTURE = 2;
+	private static final int BATCH_PICK = 3;
 	
 	private Uri tmpFileUri;
 
@@ -46,6 +53,21 @@ public class MainActivity extends Activity {
         setContentView(R.layout.main);
     }
     
+    /**
+     * Release idle OCR engines and pooled images when the system
+     * runs low on memory.
+     * 
+     * @see android.app.Activity#onLowMemory()
+     * @category Activity
+     */
+    @Override
+    public void onLowMemory() {
+    	super.onLowMemory();
+    	
+    	TessEnginePool.getInstance().evictAll();
+    	PixPool.getDefault().clear();
+    }
+    
 	/**
 	 * Handle button click event
 	 * 
@@ -102,6 +124,39 @@ public class MainActivity extends Activity {
 		startActivityForResult(captureIntent, IMAGE_PICK);
     }
     
+	/**
+	 * Handle button click event
+	 * 
+	 * @param btn The click target button
+	 * @category Button Event
+	 */
+    public void onLiveBtnClick(View btn){
+    	Intent intent = new Intent(btn.getContext(), CaptureActivity.class);
+    	startActivityForResult(intent, LIVE_CAPTURE);
+    }
+    
+	/**
+	 * Handle button click event, any image picked stands for
+	 * the folder it is in, every receipt of which is read.
+	 * 
+	 * @param btn The click target button
+	 * @category Button Event
+	 */
+    public void onBatchBtnClick(View btn){
+        if(!isIntentAvailable(this, Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI)){
+			AlertDialog.Builder builder = new AlertDialog.Builder(this);
+			builder
+				.setTitle("No image media activity!")
+				.setMessage("There is no application available to pick a picture.")
+				.setPositiveButton("Ok", null)
+				.show();
+			return;
+        }
+        
+		Intent pickIntent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+		startActivityForResult(pickIntent, BATCH_PICK);
+    }
+    
     
 	/**
 	 * Handle button click event
@@ -146,9 +201,50 @@ public class MainActivity extends Activity {
 			
 			//perform the OCR and call back on complete 
 			new OCRTask(this, new OCRTaskCompleteListener()).execute(selectedImage);
+			
+		}else if(resultCode == Activity.RESULT_OK && requestCode == LIVE_CAPTURE){
+			//the frame has already been read
+			new OCRTaskCompleteListener().onTaskComplete(data.getStringExtra(CaptureActivity.EXTRA_TEXT));
+			
+		}else if(resultCode == Activity.RESULT_OK && requestCode == BATCH_PICK){
+			File image = getImageFile(data.getData());
+			if(image == null){
+				new OCRTaskCompleteListener().onTaskComplete("The picked image is not a file.");
+				return;
+			}
+			
+			//read every receipt next to the picked one
+			new BatchOCRTask(this, new BatchTaskCompleteListener()).execute(image.getParentFile());
 		}
 	}
     
+    /**
+     * Find the file behind an image Uri from the media store.
+     * 
+     * @param uri The picked image
+     * @return The image file or null if it has none
+     */
+    private File getImageFile(Uri uri) {
+    	if("file".equals(uri.getScheme())){
+    		return new File(uri.getPath());
+    	}
+    	
+    	Cursor cursor = getContentResolver().query(uri,
+    			new String[]{ MediaStore.Images.Media.DATA }, null, null, null);
+    	if(cursor == null){
+    		return null;
+    	}
+    	try {
+    		if(!cursor.moveToFirst()){
+    			return null;
+    		}
+    		String path = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA));
+    		return path != null ? new File(path) : null;
+    	} finally {
+    		cursor.close();
+    	}
+    }
+    
     /**
      * Indicates whether the specified action can be used as an intent. This
      * method queries the package manager for installed packages that can
@@ -215,4 +311,27 @@ public class MainActivity extends Activity {
 		}
 
 	}
+	
+    /**
+     * An AsyncTaskCompleteListener to handle the completion of a BatchOCRTask.
+     */
+	public class BatchTaskCompleteListener implements AsyncTaskCompleteListener<BatchReport> {
+
+		/**
+		 * Handle completion of BatchOCRTask. 
+		 * 
+		 * @see com.flugtag.task.AsyncTaskCompleteListener#onTaskComplete(java.lang.Object)
+		 */
+		@Override
+		public void onTaskComplete(BatchReport result) {
+			Context ctx = MainActivity.this;
+			AlertDialog.Builder builder = new AlertDialog.Builder(ctx);
+			builder
+				.setTitle("Batch OCR")
+				.setMessage(result.toString())
+				.setPositiveButton("Ok", null)
+				.show();
+		}
+
+	}
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package com.flugtag;
+
+import java.io.File;
+
+import com.flugtag.task.AsyncTaskCompleteListener;
+import com.flugtag.task.ToolTask;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.content.pm.ApplicationInfo;
+import android.os.Bundle;
+import android.util.Log;
+
+/**
+ * Runs an offline tool over a corpus folder on the device, for
+ * debuggable builds only. There is no button for it, start it
+ * from a computer:
+ *
+ * <pre>
+ * adb shell am start -n com.flugtag/.ToolsActivity \
+ *     -e tool tune-detector -e corpus /sdcard/corpus
+ * </pre>
+ *
+ * The tools are the constants of ToolTask. The record tool
+ * writes the .replay files RegressionHarness checks offline.
+ */
+public class ToolsActivity extends Activity {
+	private static final String TAG = "ToolsActivity";
+
+	/** The tool to run. */
+	public static final String EXTRA_TOOL = "tool";
+	/** The corpus folder to run it over. */
+	public static final String EXTRA_CORPUS = "corpus";
+
+	/**
+	 * Handle the Activity create.
+	 *
+	 * @see android.app.Activity#onCreate(android.os.Bundle)
+	 * @category Activity
+	 */
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		if((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0){
+			Log.w(TAG, "Tools only run in debuggable builds");
+			finish();
+			return;
+		}
+
+		String tool = getIntent().getStringExtra(EXTRA_TOOL);
+		String corpus = getIntent().getStringExtra(EXTRA_CORPUS);
+		if(tool == null || corpus == null){
+			showReport("Usage: -e " + EXTRA_TOOL + " <tool> -e " + EXTRA_CORPUS + " <folder>");
+			return;
+		}
+
+		new ToolTask(this, tool, new ToolTaskCompleteListener()).execute(new File(corpus));
+	}
+
+	private void showReport(String report) {
+		new AlertDialog.Builder(this)
+			.setTitle("Tools")
+			.setMessage(report)
+			.setPositiveButton("Ok", new DialogInterface.OnClickListener() {
+				@Override
+				public void onClick(DialogInterface dialog, int which) {
+					finish();
+				}
+			})
+			.show();
+	}
+
+	/**
+	 * An AsyncTaskCompleteListener to show the report of a ToolTask.
+	 */
+	public class ToolTaskCompleteListener implements AsyncTaskCompleteListener<String> {
+
+		/**
+		 * Handle completion of ToolTask.
+		 *
+		 * @see com.flugtag.task.AsyncTaskCompleteListener#onTaskComplete(java.lang.Object)
+		 */
+		@Override
+		public void onTaskComplete(String result) {
+			showReport(result);
+		}
+
+	}
+}
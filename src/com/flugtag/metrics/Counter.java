@@ -0,0 +1,43 @@
+package com.flugtag.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named count of events.
+ */
+public class Counter {
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+
+	Counter(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the name of this counter
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Count one event.
+	 */
+	public void increment() {
+		count.incrementAndGet();
+	}
+
+	/**
+	 * @param delta The number of events to count
+	 */
+	public void add(long delta) {
+		count.addAndGet(delta);
+	}
+
+	/**
+	 * @return the number of events counted
+	 */
+	public long get() {
+		return count.get();
+	}
+}
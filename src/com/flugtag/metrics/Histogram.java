@@ -0,0 +1,104 @@
+package com.flugtag.metrics;
+
+import com.flugtag.util.Percentiles;
+
+/**
+ * A named distribution of values.
+ *
+ * Only the most recent samples are kept for percentiles, in a
+ * fixed ring buffer, so recording never allocates. Count, sum,
+ * min and max cover every value ever recorded.
+ */
+public class Histogram {
+	/** The number of recent samples percentiles are computed over. */
+	public static final int WINDOW = 512;
+
+	private final String name;
+	private final String unit;
+
+	private final long[] window = new long[WINDOW];
+	private int next;
+	private long count;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+
+	Histogram(String name, String unit) {
+		this.name = name;
+		this.unit = unit;
+	}
+
+	/**
+	 * @return the name of this histogram
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the unit of the recorded values
+	 */
+	public String getUnit() {
+		return unit;
+	}
+
+	/**
+	 * @param value The value to record
+	 */
+	public synchronized void record(long value) {
+		window[next] = value;
+		next = (next + 1) % WINDOW;
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * @return a consistent copy of the current statistics
+	 */
+	public Snapshot snapshot() {
+		long[] samples;
+		int size;
+		Snapshot snapshot = new Snapshot();
+
+		synchronized(this){
+			size = (int) Math.min(count, WINDOW);
+			samples = new long[size];
+			System.arraycopy(window, 0, samples, 0, size);
+
+			snapshot.count = count;
+			snapshot.sum = sum;
+			snapshot.min = count > 0 ? min : 0;
+			snapshot.max = count > 0 ? max : 0;
+		}
+
+		snapshot.p50 = Percentiles.percentile(samples, size, 50);
+		snapshot.p90 = Percentiles.sortedPercentile(samples, size, 90);
+		snapshot.p95 = Percentiles.sortedPercentile(samples, size, 95);
+		snapshot.p99 = Percentiles.sortedPercentile(samples, size, 99);
+		return snapshot;
+	}
+
+	/**
+	 * The statistics of a histogram at one point in time.
+	 * Percentiles cover the most recent WINDOW samples.
+	 */
+	public static class Snapshot {
+		public long count;
+		public long sum;
+		public long min;
+		public long max;
+		public long p50;
+		public long p90;
+		public long p95;
+		public long p99;
+
+		/**
+		 * @return the mean of every recorded value
+		 */
+		public long getMean() {
+			return count > 0 ? sum / count : 0;
+		}
+	}
+}
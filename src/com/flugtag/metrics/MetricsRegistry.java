@@ -0,0 +1,195 @@
+package com.flugtag.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.flugtag.util.Paths;
+
+/**
+ * Holds the timers, histograms and counters of the OCR pipeline,
+ * so the slow stage on a given device can be found.
+ *
+ * Everything is kept in memory. Snapshots are appended to a
+ * CSV file for offline analysis with writeSnapshot().
+ */
+public class MetricsRegistry {
+
+	// Stage timers, in microseconds
+	public static final String DECODE = "stage.decode";
+	public static final String RESIZE = "stage.resize";
+	public static final String CONVERT = "stage.convertTo8";
+	public static final String ADAPTIVE_MAP = "stage.adaptiveMap";
+	public static final String BINARIZE = "stage.binarize";
+	public static final String ENHANCE = "stage.enhance";
+	public static final String THRESHOLD = "stage.threshold";
+	public static final String DESKEW = "stage.deskew";
+	public static final String DETECT = "stage.detect";
+	public static final String RECOGNIZE = "stage.recognize";
+	public static final String RECOGNIZE_LINE = "stage.recognizeLine";
+	public static final String TOTAL = "stage.total";
+
+	// Histograms
+	public static final String LINES_PER_RECEIPT = "receipt.lines";
+	public static final String NATIVE_PEAK = "native.peak";
+
+	// Counters
+	public static final String LINES_DETECTED = "lines.detected";
+	public static final String PIXELS_PROCESSED = "pixels.processed";
+	public static final String NATIVE_ALLOCATIONS = "native.allocations";
+	public static final String LINES_RETRIED = "lines.retried";
+	public static final String LINES_IMPROVED = "lines.improved";
+	public static final String POOL_HITS = "pool.hits";
+	public static final String POOL_MISSES = "pool.misses";
+	public static final String FRAMES_CHECKED = "frames.checked";
+	public static final String FRAMES_SKIPPED = "frames.skipped";
+	public static final String FRAMES_DETECTED = "frames.detected";
+	public static final String FRAMES_TRACKED = "frames.tracked";
+
+	private static final String UNIT_MICROS = "us";
+
+	private static final MetricsRegistry instance = new MetricsRegistry();
+
+	private final ConcurrentHashMap<String, Histogram> histograms =
+			new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentHashMap<String, Counter> counters =
+			new ConcurrentHashMap<String, Counter>();
+
+	/**
+	 * @return the application wide registry
+	 */
+	public static MetricsRegistry getDefault() {
+		return instance;
+	}
+
+	/**
+	 * Get or create the timer of a stage.
+	 *
+	 * @param name The name of the stage
+	 * @return A histogram of microseconds
+	 */
+	public Histogram timer(String name) {
+		return histogram(name, UNIT_MICROS);
+	}
+
+	/**
+	 * Get or create a histogram.
+	 *
+	 * @param name The name of the histogram
+	 * @param unit The unit of its values, used in snapshots
+	 * @return The histogram
+	 */
+	public Histogram histogram(String name, String unit) {
+		Histogram histogram = histograms.get(name);
+		if(histogram == null){
+			histograms.putIfAbsent(name, new Histogram(name, unit));
+			histogram = histograms.get(name);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Get or create a counter.
+	 *
+	 * @param name The name of the counter
+	 * @return The counter
+	 */
+	public Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if(counter == null){
+			counters.putIfAbsent(name, new Counter(name));
+			counter = counters.get(name);
+		}
+		return counter;
+	}
+
+	/**
+	 * @return the names of every timer and histogram, sorted
+	 */
+	public List<String> getHistogramNames() {
+		return sorted(histograms.keySet());
+	}
+
+	/**
+	 * Forget every recorded value.
+	 */
+	public void clear() {
+		histograms.clear();
+		counters.clear();
+	}
+
+	/**
+	 * Append a snapshot of every metric to the default metrics file.
+	 *
+	 * @throws IOException
+	 */
+	public void writeSnapshot() throws IOException {
+		writeSnapshot(new File(Paths.METRICS_FILE));
+	}
+
+	/**
+	 * Append a snapshot of every metric to a CSV file, one row
+	 * per metric. A header is written when the file is new.
+	 *
+	 * @param file The file to append to
+	 * @throws IOException
+	 */
+	public void writeSnapshot(File file) throws IOException {
+		boolean header = !file.exists();
+		long time = System.currentTimeMillis();
+
+		Writer out = new FileWriter(file, true);
+		try {
+			if(header){
+				out.write("time,name,unit,count,sum,min,max,mean,p50,p90,p95,p99\n");
+			}
+			for(String name : sorted(histograms.keySet())){
+				Histogram histogram = histograms.get(name);
+				Histogram.Snapshot s = histogram.snapshot();
+				out.write(time + "," + name + "," + histogram.getUnit() + "," + s.count + ","
+						+ s.sum + "," + s.min + "," + s.max + "," + s.getMean() + ","
+						+ s.p50 + "," + s.p90 + "," + s.p95 + "," + s.p99 + "\n");
+			}
+			for(String name : sorted(counters.keySet())){
+				long count = counters.get(name).get();
+				out.write(time + "," + name + ",count," + count + "," + count + ",,,,,,,\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Metrics:");
+		for(String name : sorted(histograms.keySet())){
+			Histogram histogram = histograms.get(name);
+			Histogram.Snapshot s = histogram.snapshot();
+			sb.append("\n  ").append(name)
+				.append(" n=").append(s.count)
+				.append(" p50=").append(s.p50)
+				.append(" p95=").append(s.p95)
+				.append(" p99=").append(s.p99)
+				.append(" max=").append(s.max)
+				.append(' ').append(histogram.getUnit());
+		}
+		for(String name : sorted(counters.keySet())){
+			sb.append("\n  ").append(name).append('=').append(counters.get(name).get());
+		}
+		return sb.toString();
+	}
+
+	private static List<String> sorted(Iterable<String> names) {
+		List<String> list = new ArrayList<String>();
+		for(String name : names){
+			list.add(name);
+		}
+		Collections.sort(list);
+		return list;
+	}
+}
@@ -0,0 +1,45 @@
+package com.flugtag.metrics;
+
+/**
+ * Times one run of a pipeline stage into a histogram
+ * of microseconds.
+ *
+ * <pre>
+ * Timer timer = Timer.start(MetricsRegistry.DECODE);
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop();
+ * }
+ * </pre>
+ */
+public class Timer {
+	private final Histogram histogram;
+	private final long startNanos;
+
+	private Timer(Histogram histogram) {
+		this.histogram = histogram;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Start timing a stage of the default registry.
+	 *
+	 * @param name The name of the stage
+	 * @return A running Timer
+	 */
+	public static Timer start(String name) {
+		return new Timer(MetricsRegistry.getDefault().timer(name));
+	}
+
+	/**
+	 * Record the time since the timer was started.
+	 *
+	 * @return the elapsed microseconds
+	 */
+	public long stop() {
+		long micros = (System.nanoTime() - startNanos) / 1000;
+		histogram.record(micros);
+		return micros;
+	}
+}
@@ -0,0 +1,273 @@
+package com.flugtag.ocr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * Recognizes a receipt once, then reads its weak lines again
+ * from differently preprocessed pages.
+ *
+ * A line is weak when its mean confidence or the confidence
+ * of its weakest word is below the thresholds. Each fallback
+ * chain is only applied to the page when some line is still
+ * weak, and only the weak boxes are recognized on the result.
+ * The reading with the best confidence is kept, so good lines
+ * pay nothing extra.
+ *
+ * The chains are applied to the whole page rather than each
+ * line, which keeps the box geometry valid without cropping.
+ * None of them scale the image. A chain is skipped when the
+ * page has a depth it can't take, like a page the preprocessing
+ * chain already binarized.
+ */
+public class AdaptiveRecognizer {
+	private static final String TAG = "AdaptiveRecognizer";
+
+	/**
+	 * A preprocessing step applied to the page before a retry.
+	 * The OcrEngine applies it.
+	 */
+	public interface Chain {
+		/**
+		 * @return a short name for signatures and logs
+		 */
+		public String getName();
+
+		/**
+		 * @param depth The bit depth of the page
+		 * @return true if the chain can be applied to pages of that depth
+		 */
+		public boolean accepts(int depth);
+
+		/**
+		 * @param preprocessor Runs the individual steps
+		 * @param page A clone of the page, recycled by the step
+		 * @return The processed page
+		 */
+		public Pix apply(Preprocessor preprocessor, Pix page);
+	}
+
+	/** Otsu adaptive binarization. */
+	public static final Chain OTSU = new Chain() {
+		@Override
+		public String getName() {
+			return "otsu";
+		}
+
+		@Override
+		public boolean accepts(int depth) {
+			return depth == 8;
+		}
+
+		@Override
+		public Pix apply(Preprocessor preprocessor, Pix page) {
+			return preprocessor.binarize(page);
+		}
+	};
+
+	/** Unsharp masking, sharpens blurred print. */
+	public static final Chain UNSHARP = new Chain() {
+		@Override
+		public String getName() {
+			return "unsharp";
+		}
+
+		@Override
+		public boolean accepts(int depth) {
+			return depth == 8 || depth == 32;
+		}
+
+		@Override
+		public Pix apply(Preprocessor preprocessor, Pix page) {
+			return preprocessor.enhance(page);
+		}
+	};
+
+	/** Edge adaptive thresholding, for faded print on uneven paper. */
+	public static final Chain EDGE_ADAPTIVE = new Chain() {
+		@Override
+		public String getName() {
+			return "edge";
+		}
+
+		@Override
+		public boolean accepts(int depth) {
+			return depth == 8;
+		}
+
+		@Override
+		public Pix apply(Preprocessor preprocessor, Pix page) {
+			return preprocessor.threshold(page);
+		}
+	};
+
+	/**
+	 * When a line is retried and which chains it is retried with.
+	 */
+	public static class Parameters {
+		/** Lines with a lower mean confidence are retried. */
+		public int minConfidence;
+
+		/** Lines with a word of lower confidence are retried. */
+		public int minWordConfidence;
+
+		/** The fallback chains, tried in order while lines are weak. */
+		public Chain[] chains;
+
+		public Parameters() {
+			minConfidence = 70;
+			minWordConfidence = 40;
+			chains = new Chain[] { OTSU, UNSHARP, EDGE_ADAPTIVE };
+		}
+	}
+
+	private final OcrEngine engine;
+	private final Parameters params;
+
+	/**
+	 * @param engine Recognizes the page and applies the fallback chains
+	 * @param params The thresholds and chains
+	 */
+	public AdaptiveRecognizer(OcrEngine engine, Parameters params) {
+		this.engine = engine;
+		this.params = params;
+	}
+
+	/**
+	 * Describe the thresholds and chains. The recognition
+	 * settings are part of the signature of the engine.
+	 *
+	 * @return The signature of the retry settings
+	 */
+	public String getSignature() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("retry<").append(params.minConfidence)
+				.append('/').append(params.minWordConfidence);
+		for(Chain chain : params.chains){
+			sb.append(',').append(chain.getName());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Recognize every text area of a page with the profile of the
+	 * recognizer, retrying the weak ones.
+	 *
+	 * @param regions The page and its text areas, in reading order
+	 * @param listener Notified of each line, may be null
+	 * @return The best reading of every line in the order of the boxes
+	 */
+	public RecognitionResult recognize(TextRegions regions, LineListener listener) {
+		return recognize(regions, listener, engine.getProfile());
+	}
+
+	/**
+	 * Recognize every text area of a page, retrying the weak ones.
+	 * Retried lines are read with the profile they were first read
+	 * with. The listener is called on the worker threads as each
+	 * line is first read, and again for every line a retry improves.
+	 * The regions are not recycled.
+	 *
+	 * @param regions The page and its text areas, in reading order
+	 * @param listener Notified of each line, may be null
+	 * @param selector Picks the profile of each line
+	 * @return The best reading of every line in the order of the boxes
+	 */
+	public RecognitionResult recognize(TextRegions regions, LineListener listener,
+			final ProfileSelector selector) {
+		LineResult[] lines = engine.recognize(regions, listener, selector).getLines();
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+
+		int depth = regions.getPageDepth();
+		for(Chain chain : params.chains){
+			final List<LineResult> weak = findWeak(lines);
+			if(weak.isEmpty()){
+				break;
+			}
+			if(!chain.accepts(depth)){
+				Log.i(TAG, "Skipping " + chain.getName() + " retries of a " + depth + "bpp page");
+				continue;
+			}
+
+			Rect[] boxes = new Rect[weak.size()];
+			for(int i=0;i<boxes.length;i++){
+				boxes[i] = weak.get(i).getBox();
+			}
+
+			TextRegions retry = engine.retry(regions, chain, boxes);
+			LineResult[] retried;
+			try {
+				retried = engine.recognize(retry, null, new ProfileSelector() {
+					@Override
+					public RecognitionProfile select(int index, Rect box) {
+						return selector.select(weak.get(index).getIndex(), box);
+					}
+
+					@Override
+					public String getSignature() {
+						return selector.getSignature();
+					}
+				}).getLines();
+			} finally {
+				retry.recycle();
+			}
+			metrics.counter(MetricsRegistry.LINES_RETRIED).add(retried.length);
+
+			for(int i=0;i<retried.length;i++){
+				LineResult old = weak.get(i);
+				LineResult candidate = retried[i];
+				if(isBetter(candidate, old)){
+					LineResult line = new LineResult(
+							old.getIndex(),
+							candidate.getText(),
+							candidate.getConfidence(),
+							old.getBox(),
+							candidate.getWordConfidences());
+					lines[old.getIndex()] = line;
+					metrics.counter(MetricsRegistry.LINES_IMPROVED).increment();
+					if(listener != null){
+						listener.onLineRecognized(line);
+					}
+				}
+			}
+		}
+
+		return new RecognitionResult(lines);
+	}
+
+	/**
+	 * @param line A recognized line
+	 * @return true if the line should be read again
+	 */
+	public boolean isWeak(LineResult line) {
+		return line.getBox() != null
+				&& (line.getConfidence() < params.minConfidence
+						|| line.getMinWordConfidence() < params.minWordConfidence);
+	}
+
+	private List<LineResult> findWeak(LineResult[] lines) {
+		List<LineResult> weak = new ArrayList<LineResult>();
+		for(LineResult line : lines){
+			if(isWeak(line)){
+				weak.add(line);
+			}
+		}
+		return weak;
+	}
+
+	/**
+	 * Compare by mean confidence, then by the weakest word.
+	 */
+	private static boolean isBetter(LineResult candidate, LineResult old) {
+		if(candidate.getConfidence() != old.getConfidence()){
+			return candidate.getConfidence() > old.getConfidence();
+		}
+		return candidate.getMinWordConfidence() > old.getMinWordConfidence();
+	}
+}
@@ -0,0 +1,99 @@
+package com.flugtag.ocr;
+
+import java.text.MessageFormat;
+
+import com.flugtag.util.Percentiles;
+
+/**
+ * Throughput and latency of a batch of receipts.
+ */
+public class BatchReport {
+	private final int receipts;
+	private final int failures;
+	private final long elapsedMillis;
+	private final long p50;
+	private final long p95;
+	private final long p99;
+
+	/**
+	 * @param latencies The latency of every completed receipt in milliseconds, sorted in place
+	 * @param count The number of latencies
+	 * @param failures The number of receipts that could not be recognized
+	 * @param elapsedMillis The wall clock time of the whole batch
+	 */
+	public BatchReport(long[] latencies, int count, int failures, long elapsedMillis) {
+		this.receipts = count;
+		this.failures = failures;
+		this.elapsedMillis = elapsedMillis;
+
+		this.p50 = Percentiles.percentile(latencies, count, 50);
+		this.p95 = Percentiles.sortedPercentile(latencies, count, 95);
+		this.p99 = Percentiles.sortedPercentile(latencies, count, 99);
+	}
+
+	/**
+	 * @return the number of receipts processed, failures included
+	 */
+	public int getReceiptCount() {
+		return receipts;
+	}
+
+	/**
+	 * @return the number of receipts that could not be recognized
+	 */
+	public int getFailureCount() {
+		return failures;
+	}
+
+	/**
+	 * @return the wall clock time of the whole batch
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return receipts processed per second of wall clock time
+	 */
+	public double getReceiptsPerSecond() {
+		if(elapsedMillis == 0){
+			return 0;
+		}
+		return receipts * 1000.0 / elapsedMillis;
+	}
+
+	/**
+	 * @return the median receipt latency in milliseconds
+	 */
+	public long getP50Millis() {
+		return p50;
+	}
+
+	/**
+	 * @return the 95th percentile receipt latency in milliseconds
+	 */
+	public long getP95Millis() {
+		return p95;
+	}
+
+	/**
+	 * @return the 99th percentile receipt latency in milliseconds
+	 */
+	public long getP99Millis() {
+		return p99;
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format(
+				"{0} receipts ({1} failed) in {2} ms, {3,number,0.00} receipts/sec, " +
+				"latency p50={4} ms p95={5} ms p99={6} ms",
+				receipts,
+				failures,
+				elapsedMillis,
+				getReceiptsPerSecond(),
+				p50,
+				p95,
+				p99);
+	}
+}
@@ -0,0 +1,244 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.List;
+
+import android.util.Log;
+
+import com.flugtag.util.Percentiles;
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * Runs sample receipts through several preprocessing chains
+ * and reports the time and OCR confidence of each.
+ *
+ * Every chain reads every receipt from decode to recognition.
+ * Decoding is not timed, since it only depends on the area a
+ * chain scales to. Use pickFastest() to choose the quickest
+ * chain that is accurate enough. A chain that fails on a receipt
+ * is reported as failed and the benchmark goes on to the next.
+ */
+public class ChainBenchmark {
+	private static final String TAG = "ChainBenchmark";
+
+	private final List<PreprocessChain> chains;
+	private final ParallelRecognizer recognizer;
+
+	/**
+	 * Benchmark chains on the shared recognizer.
+	 *
+	 * @param chains The chains to compare
+	 */
+	public ChainBenchmark(List<PreprocessChain> chains) {
+		this(chains, ParallelRecognizer.getInstance());
+	}
+
+	/**
+	 * @param chains The chains to compare
+	 * @param recognizer Recognizes the detected text areas
+	 */
+	public ChainBenchmark(List<PreprocessChain> chains, ParallelRecognizer recognizer) {
+		this.chains = chains;
+		this.recognizer = recognizer;
+	}
+
+	/**
+	 * Read every image with every chain.
+	 *
+	 * @param images The encoded receipt images
+	 * @return One result per chain, in the order of the chains
+	 */
+	public Result[] run(File[] images) {
+		TextSlicer slicer = new TextSlicer(false);
+		try {
+			return run(images, slicer);
+		} finally {
+			slicer.release();
+		}
+	}
+
+	private Result[] run(File[] images, TextSlicer slicer) {
+		Result[] results = new Result[chains.size()];
+
+		for(int c=0;c<results.length;c++){
+			PreprocessChain chain = chains.get(c);
+			try {
+				results[c] = run(chain, images, slicer);
+			} catch (RuntimeException e) {
+				Log.w(TAG, "Chain " + chain.getName() + " failed", e);
+				results[c] = new Result(chain, e.toString());
+			}
+			Log.i(TAG, results[c].toString());
+		}
+		return results;
+	}
+
+	private Result run(PreprocessChain chain, File[] images, TextSlicer slicer) {
+		Preprocessor preprocessor = new Preprocessor(chain);
+
+		long[] latencies = new long[images.length];
+		long preprocessSum = 0;
+		long confidenceSum = 0;
+		int count = 0;
+
+		for(File image : images){
+			Pix pix;
+			try {
+				pix = ImageDecoder.decodeGray(image, preprocessor.getMaxImageArea());
+			} catch (IOException e) {
+				Log.w(TAG, "Skipping " + image, e);
+				continue;
+			}
+			if(pix == null){
+				Log.w(TAG, "Skipping " + image + ", could not decode");
+				continue;
+			}
+
+			long startMillis = System.currentTimeMillis();
+			pix = preprocessor.process(pix);
+			long processedMillis = System.currentTimeMillis();
+
+			TextRegions regions = slicer.detect(pix);
+			RecognitionResult result;
+			try {
+				result = recognizer.recognize(regions, null);
+			} finally {
+				regions.recycle();
+			}
+
+			latencies[count] = System.currentTimeMillis() - startMillis;
+			preprocessSum += processedMillis - startMillis;
+			confidenceSum += result.getMeanConfidence();
+			count++;
+		}
+
+		return new Result(chain, latencies, count, preprocessSum, confidenceSum);
+	}
+
+	/**
+	 * Pick the chain with the lowest median time among those
+	 * with at least the provided confidence. Failed chains are
+	 * never picked.
+	 *
+	 * @param results The results of run()
+	 * @param minConfidence The lowest acceptable mean confidence, 0 - 100
+	 * @return The fastest good enough result or null if none is
+	 */
+	public static Result pickFastest(Result[] results, int minConfidence) {
+		Result best = null;
+		for(Result result : results){
+			if(result.getError() != null || result.getMeanConfidence() < minConfidence){
+				continue;
+			}
+			if(best == null || result.getP50Millis() < best.getP50Millis()){
+				best = result;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The time and confidence of one chain.
+	 */
+	public static class Result {
+		private final PreprocessChain chain;
+		private final int receipts;
+		private final long meanPreprocessMillis;
+		private final long p50;
+		private final long p95;
+		private final int meanConfidence;
+		private final String error;
+
+		/**
+		 * @param chain The chain the receipts were read with
+		 * @param latencies The preprocessing to recognition time of each receipt, sorted in place
+		 * @param count The number of latencies
+		 * @param preprocessSum The total time spent in the chain
+		 * @param confidenceSum The sum of the mean confidence of each receipt
+		 */
+		Result(PreprocessChain chain, long[] latencies, int count,
+				long preprocessSum, long confidenceSum) {
+			this.chain = chain;
+			this.receipts = count;
+			this.meanPreprocessMillis = count > 0 ? preprocessSum / count : 0;
+			this.p50 = Percentiles.percentile(latencies, count, 50);
+			this.p95 = Percentiles.sortedPercentile(latencies, count, 95);
+			this.meanConfidence = count > 0 ? (int) (confidenceSum / count) : 0;
+			this.error = null;
+		}
+
+		/**
+		 * @param chain The chain that failed
+		 * @param error What went wrong
+		 */
+		Result(PreprocessChain chain, String error) {
+			this.chain = chain;
+			this.receipts = 0;
+			this.meanPreprocessMillis = 0;
+			this.p50 = 0;
+			this.p95 = 0;
+			this.meanConfidence = 0;
+			this.error = error;
+		}
+
+		/**
+		 * @return the chain the receipts were read with
+		 */
+		public PreprocessChain getChain() {
+			return chain;
+		}
+
+		/**
+		 * @return the mean time spent in the chain per receipt in milliseconds
+		 */
+		public long getMeanPreprocessMillis() {
+			return meanPreprocessMillis;
+		}
+
+		/**
+		 * @return the median preprocessing to recognition time in milliseconds
+		 */
+		public long getP50Millis() {
+			return p50;
+		}
+
+		/**
+		 * @return the 95th percentile preprocessing to recognition time in milliseconds
+		 */
+		public long getP95Millis() {
+			return p95;
+		}
+
+		/**
+		 * @return the mean confidence of the receipts, 0 - 100
+		 */
+		public int getMeanConfidence() {
+			return meanConfidence;
+		}
+
+		/**
+		 * @return why the chain failed, or null if it read every receipt
+		 */
+		public String getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			if(error != null){
+				return chain.getName() + ": failed, " + error + " [" + chain.getSignature() + "]";
+			}
+			return MessageFormat.format(
+					"{0}: {1} receipts, preprocess {2} ms, total p50={3} ms p95={4} ms, confidence {5} [{6}]",
+					chain.getName(),
+					receipts,
+					meanPreprocessMillis,
+					p50,
+					p95,
+					meanConfidence,
+					chain.getSignature());
+		}
+	}
+}
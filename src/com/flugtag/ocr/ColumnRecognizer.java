@@ -0,0 +1,184 @@
+package com.flugtag.ocr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import android.graphics.Rect;
+
+/**
+ * Reads the item and price columns of a receipt with
+ * different profiles, then puts the rows back together.
+ *
+ * Item text is read with a general text profile and prices
+ * with a digits and currency profile one word at a time. All
+ * cells go to the recognizer in one call, so the workers read
+ * both columns at once. Each price is paired with the item it
+ * overlaps vertically the most.
+ */
+public class ColumnRecognizer {
+
+	/** Cells must share at least this fraction of the shorter height to be a row. */
+	private static final float MIN_ROW_OVERLAP = 0.5f;
+
+	private final OcrEngine engine;
+	private final ColumnSplitter splitter;
+	private final RecognitionProfile labelProfile;
+	private final RecognitionProfile priceProfile;
+
+	/**
+	 * Read items with receipt-fast and prices with price.
+	 *
+	 * @param engine Recognizes the cells
+	 */
+	public ColumnRecognizer(OcrEngine engine) {
+		this(engine, new ColumnSplitter(),
+				RecognitionProfile.RECEIPT_FAST, RecognitionProfile.PRICE);
+	}
+
+	/**
+	 * @param engine Recognizes the cells
+	 * @param splitter Finds the gap between the columns
+	 * @param labelProfile Reads the item column
+	 * @param priceProfile Reads the price column
+	 */
+	public ColumnRecognizer(OcrEngine engine, ColumnSplitter splitter,
+			RecognitionProfile labelProfile, RecognitionProfile priceProfile) {
+		this.engine = engine;
+		this.splitter = splitter;
+		this.labelProfile = labelProfile;
+		this.priceProfile = priceProfile;
+	}
+
+	/**
+	 * Describe the recognition settings of both columns.
+	 *
+	 * @return The signature of the column settings
+	 */
+	public String getSignature() {
+		return "columns(" + labelProfile.getSignature() + "," + priceProfile.getSignature() + ")";
+	}
+
+	/**
+	 * Recognize a receipt one column cell at a time. When no
+	 * gap is found every text area is read as an item line.
+	 * The listener is called on the worker threads with each
+	 * cell as it is read, indexed in cell order. The regions
+	 * are not recycled.
+	 *
+	 * @param regions The page and its text areas, in reading order
+	 * @param listener Notified of each cell, may be null
+	 * @return One line per row, the item and price separated by a space
+	 */
+	public RecognitionResult recognize(TextRegions regions, LineListener listener) {
+		ColumnSplitter.Columns columns = splitter.split(
+				regions.getBoxes(), regions.getPageWidth());
+		if(!columns.isSplit()){
+			return engine.recognize(regions, listener, labelProfile);
+		}
+
+		final Rect[] labels = columns.getLabels();
+		Rect[] prices = columns.getPrices();
+		Rect[] cells = new Rect[labels.length + prices.length];
+		System.arraycopy(labels, 0, cells, 0, labels.length);
+		System.arraycopy(prices, 0, cells, labels.length, prices.length);
+
+		// The page is only borrowed, the regions recycle it
+		TextRegions cellRegions = regions.withBoxes(cells);
+		LineResult[] read = engine.recognize(cellRegions, listener, new ProfileSelector() {
+			@Override
+			public RecognitionProfile select(int index, Rect box) {
+				return index < labels.length ? labelProfile : priceProfile;
+			}
+
+			@Override
+			public String getSignature() {
+				return ColumnRecognizer.this.getSignature();
+			}
+		}).getLines();
+
+		LineResult[] labelLines = new LineResult[labels.length];
+		LineResult[] priceLines = new LineResult[prices.length];
+		System.arraycopy(read, 0, labelLines, 0, labelLines.length);
+		System.arraycopy(read, labels.length, priceLines, 0, priceLines.length);
+
+		return new RecognitionResult(pairRows(labelLines, priceLines));
+	}
+
+	/**
+	 * Join every price to the item it overlaps the most. Items
+	 * and prices without a partner become rows of their own.
+	 */
+	private static LineResult[] pairRows(LineResult[] labels, LineResult[] prices) {
+		LineResult[] partner = new LineResult[labels.length];
+		List<LineResult> rows = new ArrayList<LineResult>();
+
+		for(LineResult price : prices){
+			int best = -1;
+			int bestOverlap = 0;
+			for(int i=0;i<labels.length;i++){
+				int overlap = rowOverlap(labels[i].getBox(), price.getBox());
+				if(overlap > bestOverlap && partner[i] == null){
+					best = i;
+					bestOverlap = overlap;
+				}
+			}
+			if(best >= 0){
+				partner[best] = price;
+			}else{
+				rows.add(price);
+			}
+		}
+
+		for(int i=0;i<labels.length;i++){
+			rows.add(partner[i] == null ? labels[i] : join(labels[i], partner[i]));
+		}
+
+		LineResult[] sorted = rows.toArray(new LineResult[rows.size()]);
+		Arrays.sort(sorted, new Comparator<LineResult>() {
+			@Override
+			public int compare(LineResult a, LineResult b) {
+				return a.getBox().top - b.getBox().top;
+			}
+		});
+
+		LineResult[] indexed = new LineResult[sorted.length];
+		for(int i=0;i<sorted.length;i++){
+			LineResult row = sorted[i];
+			indexed[i] = new LineResult(i, row.getText(), row.getConfidence(),
+					row.getBox(), row.getWordConfidences());
+		}
+		return indexed;
+	}
+
+	/**
+	 * @return the shared height of two boxes, 0 if it is too small to be one row
+	 */
+	private static int rowOverlap(Rect a, Rect b) {
+		int overlap = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+		int shorter = Math.min(a.height(), b.height());
+		if(overlap <= 0 || overlap < shorter * MIN_ROW_OVERLAP){
+			return 0;
+		}
+		return overlap;
+	}
+
+	private static LineResult join(LineResult label, LineResult price) {
+		Rect box = new Rect(label.getBox());
+		box.union(price.getBox());
+
+		int[] labelWords = label.getWordConfidences();
+		int[] priceWords = price.getWordConfidences();
+		int[] words = new int[labelWords.length + priceWords.length];
+		System.arraycopy(labelWords, 0, words, 0, labelWords.length);
+		System.arraycopy(priceWords, 0, words, labelWords.length, priceWords.length);
+
+		return new LineResult(
+				label.getIndex(),
+				label.getText().trim() + " " + price.getText().trim(),
+				Math.min(label.getConfidence(), price.getConfidence()),
+				box,
+				words);
+	}
+}
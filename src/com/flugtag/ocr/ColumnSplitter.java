@@ -0,0 +1,191 @@
+package com.flugtag.ocr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Rect;
+
+/**
+ * Finds the gap between the item and price columns of a
+ * receipt from the horizontal extent of its text areas.
+ *
+ * Every box is projected onto the x axis, and the widest run
+ * of columns covered by few boxes in the right half of the
+ * page is taken as the gap. A box that spans the gap and ends
+ * where the prices end is an item the detector joined with its
+ * price, and is cut in two. Other wide boxes, like a header or
+ * a note across the receipt, are left whole as items.
+ */
+public class ColumnSplitter {
+
+	/**
+	 * Thresholds of the split.
+	 */
+	public static class Parameters {
+		/** The narrowest gap, as a fraction of the page width. */
+		public float minGapFraction;
+
+		/** The leftmost the gap may start, as a fraction of the page width. */
+		public float minSplitFraction;
+
+		/** Columns covered by at most this fraction of the boxes count as gap. */
+		public float maxGapCoverage;
+
+		public Parameters() {
+			minGapFraction = 0.03f;
+			minSplitFraction = 0.4f;
+			maxGapCoverage = 0.1f;
+		}
+	}
+
+	/**
+	 * The text areas on either side of the gap.
+	 */
+	public static class Columns {
+		private final int splitX;
+		private final Rect[] labels;
+		private final Rect[] prices;
+
+		Columns(int splitX, Rect[] labels, Rect[] prices) {
+			this.splitX = splitX;
+			this.labels = labels;
+			this.prices = prices;
+		}
+
+		/**
+		 * @return the x coordinate of the middle of the gap, -1 if there is none
+		 */
+		public int getSplitX() {
+			return splitX;
+		}
+
+		/**
+		 * @return true if a gap was found
+		 */
+		public boolean isSplit() {
+			return splitX >= 0;
+		}
+
+		/**
+		 * @return the text areas left of the gap and the wide ones left whole, all of them if there is no gap
+		 */
+		public Rect[] getLabels() {
+			return labels;
+		}
+
+		/**
+		 * @return the text areas right of the gap
+		 */
+		public Rect[] getPrices() {
+			return prices;
+		}
+	}
+
+	private final Parameters params;
+
+	public ColumnSplitter() {
+		this(new Parameters());
+	}
+
+	/**
+	 * @param params The thresholds of the split
+	 */
+	public ColumnSplitter(Parameters params) {
+		this.params = params;
+	}
+
+	/**
+	 * Split text areas into item and price columns.
+	 *
+	 * @param boxes The text areas, in reading order
+	 * @param pageWidth The width of the page the boxes are on
+	 * @return The columns, in the order of the boxes
+	 */
+	public Columns split(Rect[] boxes, int pageWidth) {
+		int splitX = findGap(boxes, pageWidth);
+		if(splitX < 0){
+			return new Columns(-1, boxes, new Rect[0]);
+		}
+
+		// The extent of the price column, from the boxes wholly in it
+		int priceLeft = Integer.MAX_VALUE;
+		int priceRight = Integer.MIN_VALUE;
+		for(Rect box : boxes){
+			if(box.left >= splitX){
+				priceLeft = Math.min(priceLeft, box.left);
+				priceRight = Math.max(priceRight, box.right);
+			}
+		}
+
+		List<Rect> labels = new ArrayList<Rect>();
+		List<Rect> prices = new ArrayList<Rect>();
+		for(Rect box : boxes){
+			if(box.left >= splitX){
+				prices.add(box);
+			}else if(box.right > splitX && box.right >= priceLeft && box.right <= priceRight){
+				labels.add(new Rect(box.left, box.top, splitX, box.bottom));
+				prices.add(new Rect(splitX, box.top, box.right, box.bottom));
+			}else{
+				labels.add(box);
+			}
+		}
+
+		return new Columns(
+				splitX,
+				labels.toArray(new Rect[labels.size()]),
+				prices.toArray(new Rect[prices.size()]));
+	}
+
+	/**
+	 * @return the middle of the widest gap, or -1 if none is wide enough
+	 */
+	private int findGap(Rect[] boxes, int pageWidth) {
+		if(boxes.length < 2 || pageWidth <= 0){
+			return -1;
+		}
+
+		int[] coverage = new int[pageWidth + 1];
+		int left = pageWidth;
+		int right = 0;
+		for(Rect box : boxes){
+			int l = Math.max(0, box.left);
+			int r = Math.min(pageWidth, box.right);
+			if(l >= r){
+				continue;
+			}
+			// Difference array, summed below
+			coverage[l]++;
+			coverage[r]--;
+			left = Math.min(left, l);
+			right = Math.max(right, r);
+		}
+
+		int maxCoverage = (int) (boxes.length * params.maxGapCoverage);
+		int minGap = Math.max(1, (int) (pageWidth * params.minGapFraction));
+		int minStart = (int) (pageWidth * params.minSplitFraction);
+
+		int bestStart = -1;
+		int bestWidth = 0;
+		int runStart = -1;
+		int covered = 0;
+		for(int x=0;x<right;x++){
+			covered += coverage[x];
+			boolean gap = x >= left && x >= minStart && covered <= maxCoverage;
+			if(gap && runStart < 0){
+				runStart = x;
+			}else if(!gap && runStart >= 0){
+				if(x - runStart > bestWidth){
+					bestStart = runStart;
+					bestWidth = x - runStart;
+				}
+				runStart = -1;
+			}
+		}
+
+		// A run still open at the right edge has no prices after it
+		if(bestWidth < minGap){
+			return -1;
+		}
+		return bestStart + bestWidth / 2;
+	}
+}
@@ -0,0 +1,292 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+import com.googlecode.leptonica.android.Constants;
+import com.googlecode.leptonica.android.JpegIO;
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.WriteFile;
+
+/**
+ * Writes intermediate images of the OCR pipeline to disk
+ * so they can be inspected.
+ *
+ * Images are compressed and written by a background thread.
+ * The OCR thread only copies the image into a bounded queue,
+ * and when the queue is full the image is dropped rather
+ * than holding up recognition.
+ *
+ * Dumping is off by default. Turn it on with setEnabled() or
+ * at runtime with <code>adb shell setprop log.tag.DebugImageWriter DEBUG</code>.
+ * Only one in every sample rate receipts is dumped.
+ */
+public class DebugImageWriter {
+	private static final String TAG = "DebugImageWriter";
+
+	/** The number of images waiting to be written. */
+	private static final int QUEUE_CAPACITY = 4;
+
+	private static final BlockingQueue<Dump> queue = new ArrayBlockingQueue<Dump>(QUEUE_CAPACITY);
+	private static Thread writerThread;
+
+	private static volatile boolean enabled = false;
+	private static volatile int sampleRate = 1;
+	private static volatile String[] stages = null;
+	private static volatile int format = Constants.IFF_JFIF_JPEG;
+
+	private static final AtomicInteger receipts = new AtomicInteger();
+	private static final AtomicLong written = new AtomicLong();
+	private static final AtomicLong dropped = new AtomicLong();
+
+	/** Guards pending, the images queued or being written. */
+	private static final Object drainLock = new Object();
+	private static int pending;
+
+	private final String prefix;
+
+	/**
+	 * @param prefix The path every image name is appended to
+	 */
+	public DebugImageWriter(String prefix) {
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Get a writer for the next receipt if dumping is enabled
+	 * and the receipt is picked by the sample rate.
+	 *
+	 * @param prefix The path every image name is appended to
+	 * @return A writer, or null if this receipt shouldn't be dumped
+	 */
+	public static DebugImageWriter forReceipt(String prefix) {
+		if(!isEnabled()){
+			return null;
+		}
+		if(receipts.getAndIncrement() % sampleRate != 0){
+			return null;
+		}
+		return new DebugImageWriter(prefix);
+	}
+
+	/**
+	 * @return true if dumping was enabled in code or with setprop
+	 */
+	public static boolean isEnabled() {
+		return enabled || Log.isLoggable(TAG, Log.DEBUG);
+	}
+
+	/**
+	 * @param enabled True to dump the images of sampled receipts
+	 */
+	public static void setEnabled(boolean enabled) {
+		DebugImageWriter.enabled = enabled;
+	}
+
+	/**
+	 * @param sampleRate Dump one in this many receipts
+	 */
+	public static void setSampleRate(int sampleRate) {
+		if(sampleRate < 1){
+			throw new IllegalArgumentException("Sample rate must be >= 1");
+		}
+		DebugImageWriter.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Restrict dumps to some stages, for example "adaptiveMap"
+	 * or "part" for the detected lines.
+	 *
+	 * @param stages The prefixes of the stage names to dump, or null for all
+	 */
+	public static void setStages(String... stages) {
+		DebugImageWriter.stages = stages;
+	}
+
+	/**
+	 * @param format Constants.IFF_JFIF_JPEG or Constants.IFF_PNG
+	 */
+	public static void setFormat(int format) {
+		if(format != Constants.IFF_JFIF_JPEG && format != Constants.IFF_PNG){
+			throw new IllegalArgumentException("Format must be JPEG or PNG");
+		}
+		DebugImageWriter.format = format;
+	}
+
+	/**
+	 * @return the number of images written
+	 */
+	public static long getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * @return the number of images dropped because the queue was full
+	 */
+	public static long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @param name The name of a pipeline stage
+	 * @return true if images of the stage are dumped
+	 */
+	public boolean wants(String name) {
+		String[] prefixes = stages;
+		if(prefixes == null){
+			return true;
+		}
+		for(String prefix : prefixes){
+			if(name.startsWith(prefix)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Queue a copy of an image to be written. The Pix is not
+	 * recycled and may be changed once this returns.
+	 *
+	 * @param name The name of the pipeline stage
+	 * @param pix The image to write, ignored when null
+	 */
+	public void write(String name, Pix pix) {
+		if(pix == null || !wants(name)){
+			return;
+		}
+
+		startWriter();
+
+		// Don't copy an image the queue has no room for
+		if(queue.remainingCapacity() == 0){
+			dropped.incrementAndGet();
+			return;
+		}
+
+		// The queue may still fill up before the offer
+		Dump dump = new Dump(prefix + name, pix.copy(), format);
+		synchronized(drainLock){
+			pending++;
+		}
+		if(!queue.offer(dump)){
+			dump.pix.recycle();
+			dropped.incrementAndGet();
+			written();
+		}
+	}
+
+	/**
+	 * Wait until every queued image has been written and its
+	 * copy recycled, so the copies aren't taken for leaks.
+	 *
+	 * @param timeoutMillis The longest to wait
+	 * @return true if the queue was drained in time
+	 * @throws InterruptedException
+	 */
+	public static boolean drain(long timeoutMillis) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeoutMillis;
+		synchronized(drainLock){
+			while(pending > 0){
+				long left = end - System.currentTimeMillis();
+				if(left <= 0){
+					return false;
+				}
+				drainLock.wait(left);
+			}
+		}
+		return true;
+	}
+
+	private static void written() {
+		synchronized(drainLock){
+			pending--;
+			drainLock.notifyAll();
+		}
+	}
+
+	private static synchronized void startWriter() {
+		if(writerThread == null){
+			writerThread = new Thread(new Writer(), TAG);
+			writerThread.setDaemon(true);
+			writerThread.setPriority(Thread.MIN_PRIORITY);
+			writerThread.start();
+		}
+	}
+
+	/**
+	 * An image waiting to be written.
+	 */
+	private static class Dump {
+		final String path;
+		final Pix pix;
+		final int format;
+
+		Dump(String path, Pix pix, int format) {
+			this.path = path;
+			this.pix = pix;
+			this.format = format;
+		}
+	}
+
+	/**
+	 * Compresses and writes queued images.
+	 */
+	private static class Writer implements Runnable {
+		@Override
+		public void run() {
+			while(true){
+				Dump dump;
+				try {
+					dump = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				try {
+					write(dump);
+					written.incrementAndGet();
+				} catch (IOException e) {
+					Log.w(TAG, "Failed to write debug image to: " + dump.path, e);
+				} catch (RuntimeException e) {
+					Log.w(TAG, "Failed to encode debug image: " + dump.path, e);
+				} finally {
+					dump.pix.recycle();
+					written();
+				}
+			}
+		}
+
+		private void write(Dump dump) throws IOException {
+			byte[] data;
+			String extension;
+
+			// JPEG can't hold binarized images
+			if(dump.format == Constants.IFF_JFIF_JPEG && dump.pix.getDepth() >= 8){
+				data = JpegIO.compressToJpeg(dump.pix);
+				extension = ".jpg";
+			}else{
+				data = WriteFile.writeMem(dump.pix, Constants.IFF_PNG);
+				extension = ".png";
+			}
+
+			File file = new File(dump.path + extension);
+			Log.i(TAG, "Writing debug image to: " + file.getPath());
+
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(data);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
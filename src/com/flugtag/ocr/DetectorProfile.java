@@ -0,0 +1,183 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Properties;
+
+import com.googlecode.eyesfree.textdetect.HydrogenTextDetector;
+
+/**
+ * Reads and writes HydrogenTextDetector.Parameters as
+ * properties, so a tuned detector can be loaded from a file.
+ *
+ * Keys are the field names of the parameters, like
+ * edge_tile_x. The debug flag and output folder are never
+ * part of a profile.
+ */
+public class DetectorProfile {
+
+	/**
+	 * Copy every tunable parameter into properties.
+	 *
+	 * @param params The detector parameters
+	 * @return The parameters as properties
+	 */
+	public static Properties read(HydrogenTextDetector.Parameters params) {
+		Properties props = new Properties();
+		for(Field field : fields()){
+			try {
+				props.setProperty(field.getName(), String.valueOf(field.get(params)));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return props;
+	}
+
+	/**
+	 * Set the parameters named by the properties. Parameters
+	 * missing from the properties are left alone.
+	 *
+	 * @param props The profile
+	 * @param params The detector parameters to change
+	 * @throws IllegalArgumentException if a key or value is invalid
+	 */
+	public static void apply(Properties props, HydrogenTextDetector.Parameters params) {
+		Enumeration<?> keys = props.propertyNames();
+		while(keys.hasMoreElements()){
+			String key = (String) keys.nextElement();
+			Field field = field(key);
+			String value = props.getProperty(key).trim();
+			try {
+				Class<?> type = field.getType();
+				if(type == int.class){
+					field.setInt(params, Integer.parseInt(value));
+				}else if(type == float.class){
+					field.setFloat(params, Float.parseFloat(value));
+				}else if(type == boolean.class){
+					field.setBoolean(params, Boolean.parseBoolean(value));
+				}else{
+					throw new IllegalArgumentException(key + " can't be set");
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(key + " is not a number: " + value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException(key + " can't be set");
+			}
+		}
+	}
+
+	/**
+	 * Describe every tunable parameter.
+	 *
+	 * @param params The detector parameters
+	 * @return The signature of the parameters
+	 */
+	public static String getSignature(HydrogenTextDetector.Parameters params) {
+		StringBuilder sb = new StringBuilder();
+		for(Field field : fields()){
+			if(sb.length() > 0){
+				sb.append(',');
+			}
+			try {
+				sb.append(field.getName()).append('=').append(field.get(params));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param file A properties file
+	 * @return The profile in the file
+	 * @throws IOException
+	 */
+	public static Properties load(File file) throws IOException {
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+		return props;
+	}
+
+	/**
+	 * @param props The profile
+	 * @param file The properties file to write
+	 * @param comment A line written at the top of the file, may be null
+	 * @throws IOException
+	 */
+	public static void save(Properties props, File file, String comment) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			props.store(out, comment);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param name The name of a parameter
+	 * @return true if the parameter can be part of a profile
+	 */
+	public static boolean isTunable(String name) {
+		for(Field field : fields()){
+			if(field.getName().equals(name)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Field field(String name) {
+		for(Field field : fields()){
+			if(field.getName().equals(name)){
+				return field;
+			}
+		}
+		throw new IllegalArgumentException("Unknown detector parameter: " + name);
+	}
+
+	/**
+	 * @return the tunable fields, sorted by name
+	 */
+	private static Field[] fields() {
+		Field[] all = HydrogenTextDetector.Parameters.class.getFields();
+		Field[] fields = new Field[all.length];
+		int count = 0;
+		for(Field field : all){
+			Class<?> type = field.getType();
+			if(!Modifier.isStatic(field.getModifiers())
+					&& (type == int.class || type == float.class || type == boolean.class)
+					&& !"debug".equals(field.getName())){
+				fields[count++] = field;
+			}
+		}
+		Field[] tunable = new Field[count];
+		System.arraycopy(fields, 0, tunable, 0, count);
+		Arrays.sort(tunable, new Comparator<Field>() {
+			@Override
+			public int compare(Field a, Field b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return tunable;
+	}
+
+	/**
+	 * Not instantiable, there are only static methods here.
+	 */
+	private DetectorProfile(){}
+}
@@ -0,0 +1,111 @@
+package com.flugtag.ocr;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.googlecode.eyesfree.opticflow.ImageBlur;
+
+/**
+ * Skips camera frames that show the same thing as the last frame
+ * read, since most consecutive frames of a continuous scan show
+ * the same receipt.
+ *
+ * Frames are compared by their ImageBlur signature. The signature
+ * of the last accepted frame is kept, and the signature of each
+ * new frame is computed into a second buffer that is swapped in
+ * when the frame is accepted, so no frame allocates.
+ *
+ * Not thread-safe, call it from the camera callback thread.
+ */
+public class FrameGate {
+
+	public static class Parameters {
+		/** Frames differing by less than this percentage are skipped. */
+		public int minDiff;
+
+		public Parameters() {
+			minDiff = 10;
+		}
+	}
+
+	private final Parameters params;
+
+	private int[] last;
+	private int[] scratch;
+	private int width;
+	private int height;
+
+	private long frames;
+	private long skipped;
+
+	public FrameGate(Parameters params) {
+		this.params = params;
+	}
+
+	/**
+	 * Check a frame, and remember it as the last one read when
+	 * it is accepted.
+	 *
+	 * @param frame The frame in YUV420SP format
+	 * @param width The width of the frame
+	 * @param height The height of the frame
+	 * @return True if the frame differs enough to be read
+	 */
+	public boolean accept(byte[] frame, int width, int height) {
+		frames++;
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.counter(MetricsRegistry.FRAMES_CHECKED).increment();
+
+		// The buffer is returned when it has the right size, a new one otherwise
+		scratch = ImageBlur.computeSignature(frame, width, height, scratch);
+
+		if(last != null && width == this.width && height == this.height
+				&& ImageBlur.diffSignature(last, scratch) < params.minDiff){
+			skipped++;
+			metrics.counter(MetricsRegistry.FRAMES_SKIPPED).increment();
+			return false;
+		}
+
+		int[] swap = last;
+		last = scratch;
+		scratch = swap;
+		this.width = width;
+		this.height = height;
+		return true;
+	}
+
+	/**
+	 * Forget the last frame, so the next one is accepted.
+	 */
+	public void reset() {
+		if(last != null && scratch == null){
+			scratch = last;
+		}
+		last = null;
+	}
+
+	/**
+	 * @return the number of frames checked
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * @return the number of frames skipped
+	 */
+	public long getSkippedCount() {
+		return skipped;
+	}
+
+	/**
+	 * @return the share of checked frames that were skipped, from 0 to 1
+	 */
+	public float getSkipRate() {
+		return frames == 0 ? 0f : (float) skipped / frames;
+	}
+
+	@Override
+	public String toString() {
+		return "FrameGate: skipped " + skipped + " of " + frames + " frames ("
+				+ Math.round(getSkipRate() * 100) + "%)";
+	}
+}
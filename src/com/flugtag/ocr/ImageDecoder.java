@@ -0,0 +1,206 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.metrics.Timer;
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.ReadFile;
+
+/**
+ * Decodes encoded receipt images into a Pix.
+ *
+ * The image bounds are read first so that the image can be
+ * subsampled while it is decoded. No bitmap or Pix is created
+ * at more than four times the requested area.
+ */
+public class ImageDecoder {
+
+	/** Rows of the bitmap converted to grayscale at once. */
+	private static final int STRIP_ROWS = 32;
+
+	/** Leptonica's 0.3, 0.5, 0.2 luminance weights, in 1/256ths. */
+	private static final int WEIGHT_RED = 77;
+	private static final int WEIGHT_GREEN = 128;
+	private static final int WEIGHT_BLUE = 51;
+
+	/**
+	 * Opens a fresh stream of the encoded image. Decoding
+	 * reads the image twice, once for its bounds.
+	 */
+	public interface Source {
+		public InputStream open() throws IOException;
+	}
+
+	/**
+	 * Decode an image, subsampled to no less than the provided area.
+	 *
+	 * @param source The encoded image
+	 * @param maxArea The number of pixels the image will be processed at
+	 * @return The resulting 32bpp Pix or null if the image could not be decoded
+	 * @throws IOException
+	 */
+	public static Pix decode(Source source, int maxArea) throws IOException {
+		Timer timer = Timer.start(MetricsRegistry.DECODE);
+		Bitmap bmp = decodeBitmap(source, maxArea, Bitmap.Config.ARGB_8888);
+		if(bmp == null){
+			return null;
+		}
+
+		Pix pix = ReadFile.readBitmap(bmp);
+		bmp.recycle();
+
+		decoded(timer, pix);
+		return pix;
+	}
+
+	/**
+	 * Decode an image straight to 8bpp grayscale, subsampled to
+	 * no less than the provided area.
+	 *
+	 * The image is decoded to an ARGB_8888 bitmap, and its
+	 * luminance is written into an 8bpp Pix a strip at a time.
+	 * No 32bpp Pix is created and the Preprocessor has nothing
+	 * left to convert. RGB_565 would halve the bitmap but keeps
+	 * only about 6 bits of luminance, which shows on faint
+	 * thermal print. JPEG subsampling is done by the decoder in
+	 * the DCT domain.
+	 *
+	 * @param source The encoded image
+	 * @param maxArea The number of pixels the image will be processed at
+	 * @return The resulting 8bpp Pix or null if the image could not be decoded.
+	 *         It may come from the PixPool, so hand it back with PixPool.recycle().
+	 * @throws IOException
+	 */
+	public static Pix decodeGray(Source source, int maxArea) throws IOException {
+		Timer timer = Timer.start(MetricsRegistry.DECODE);
+		Bitmap bmp = decodeBitmap(source, maxArea, Bitmap.Config.ARGB_8888);
+		if(bmp == null){
+			return null;
+		}
+
+		Pix pix;
+		try {
+			pix = readLuminance(bmp);
+		} finally {
+			bmp.recycle();
+		}
+
+		decoded(timer, pix);
+		return pix;
+	}
+
+	private static void decoded(Timer timer, Pix pix) {
+		timer.stop();
+
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.counter(MetricsRegistry.NATIVE_ALLOCATIONS).increment();
+		metrics.counter(MetricsRegistry.PIXELS_PROCESSED).add(pix.getWidth() * pix.getHeight());
+	}
+
+	private static Bitmap decodeBitmap(Source source, int maxArea, Bitmap.Config config)
+			throws IOException {
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inJustDecodeBounds = true;
+
+		InputStream is = source.open();
+		try {
+			BitmapFactory.decodeStream(is, null, opts);
+		} finally {
+			is.close();
+		}
+		if(opts.outWidth <= 0 || opts.outHeight <= 0){
+			return null;
+		}
+
+		opts.inJustDecodeBounds = false;
+		opts.inSampleSize = computeSampleSize(opts.outWidth, opts.outHeight, maxArea);
+		opts.inPreferredConfig = config;
+		// Dither noise would end up in the grayscale image
+		opts.inDither = false;
+
+		is = source.open();
+		try {
+			return BitmapFactory.decodeStream(is, null, opts);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Copy the luminance of a bitmap into an 8bpp Pix, using the
+	 * same channel weights as Convert.convertTo8().
+	 */
+	private static Pix readLuminance(Bitmap bmp) {
+		int width = bmp.getWidth();
+		int height = bmp.getHeight();
+
+		byte[] gray = new byte[width * height];
+		int[] strip = new int[width * STRIP_ROWS];
+
+		for(int y=0;y<height;y+=STRIP_ROWS){
+			int rows = Math.min(STRIP_ROWS, height - y);
+			bmp.getPixels(strip, 0, width, 0, y, width, rows);
+
+			int offset = y * width;
+			int count = rows * width;
+			for(int i=0;i<count;i++){
+				int color = strip[i];
+				int r = (color >> 16) & 0xff;
+				int g = (color >> 8) & 0xff;
+				int b = color & 0xff;
+				gray[offset + i] = (byte) ((r * WEIGHT_RED + g * WEIGHT_GREEN + b * WEIGHT_BLUE) >> 8);
+			}
+		}
+
+		return PixPool.getDefault().readBytes8(gray, width, height);
+	}
+
+	/**
+	 * Decode an image file straight to 8bpp grayscale, subsampled
+	 * to no less than the provided area.
+	 *
+	 * @param file The encoded image
+	 * @param maxArea The number of pixels the image will be processed at
+	 * @return The resulting 8bpp Pix or null if the image could not be decoded
+	 * @throws IOException
+	 */
+	public static Pix decodeGray(final File file, int maxArea) throws IOException {
+		return decodeGray(new Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return new FileInputStream(file);
+			}
+		}, maxArea);
+	}
+
+	/**
+	 * Get the largest power of two sample size that keeps the
+	 * image at or above the provided area. BitmapFactory rounds
+	 * other sample sizes down to a power of two anyway. The
+	 * remaining scaling is left to the Preprocessor.
+	 *
+	 * @param width The width of the encoded image
+	 * @param height The height of the encoded image
+	 * @param maxArea The number of pixels the image will be processed at
+	 * @return The sample size to decode with, at least 1
+	 */
+	public static int computeSampleSize(int width, int height, int maxArea) {
+		int sampleSize = 1;
+		while((long) (width / (sampleSize * 2)) * (height / (sampleSize * 2)) >= maxArea){
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+
+	/**
+	 * Not instantiable, there are only static methods here.
+	 */
+	private ImageDecoder(){};
+}
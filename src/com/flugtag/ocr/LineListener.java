@@ -0,0 +1,16 @@
+package com.flugtag.ocr;
+
+/**
+ * Notified as each line of a receipt is recognized, before
+ * the whole receipt is done.
+ */
+public interface LineListener {
+
+	/**
+	 * Called once per recognized line. Lines may arrive out of
+	 * order, use LineResult.getIndex() to place them.
+	 * 
+	 * @param line The index, text, confidence and box of the line
+	 */
+	public void onLineRecognized(LineResult line);
+}
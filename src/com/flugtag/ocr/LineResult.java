@@ -0,0 +1,88 @@
+package com.flugtag.ocr;
+
+import android.graphics.Rect;
+
+/**
+ * The recognized text of a single line of a receipt.
+ */
+public class LineResult {
+	private final int index;
+	private final String text;
+	private final int confidence;
+	private final Rect box;
+	private final int[] wordConfidences;
+
+	/**
+	 * @param index The position of the line in the sorted text areas
+	 * @param text The recognized text
+	 * @param confidence The mean confidence of the text, 0 - 100
+	 * @param box The bounds of the line in the processed image, may be null
+	 */
+	public LineResult(int index, String text, int confidence, Rect box) {
+		this(index, text, confidence, box, null);
+	}
+
+	/**
+	 * @param index The position of the line in the sorted text areas
+	 * @param text The recognized text
+	 * @param confidence The mean confidence of the text, 0 - 100
+	 * @param box The bounds of the line in the processed image, may be null
+	 * @param wordConfidences The confidence of each word, 0 - 100, may be null
+	 */
+	public LineResult(int index, String text, int confidence, Rect box, int[] wordConfidences) {
+		this.index = index;
+		this.text = text;
+		this.confidence = confidence;
+		this.box = box;
+		this.wordConfidences = wordConfidences != null ? wordConfidences : new int[0];
+	}
+
+	/**
+	 * @return the position of the line in the sorted text areas
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the recognized text
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the mean confidence of the text, 0 - 100
+	 */
+	public int getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * @return the bounds of the line in the processed image, may be null
+	 */
+	public Rect getBox() {
+		return box;
+	}
+
+	/**
+	 * @return the confidence of each word, 0 - 100
+	 */
+	public int[] getWordConfidences() {
+		return wordConfidences;
+	}
+
+	/**
+	 * @return the confidence of the weakest word, or the line confidence if there are no words
+	 */
+	public int getMinWordConfidence() {
+		if(wordConfidences.length == 0){
+			return confidence;
+		}
+		int min = wordConfidences[0];
+		for(int conf : wordConfidences){
+			min = Math.min(min, conf);
+		}
+		return min;
+	}
+}
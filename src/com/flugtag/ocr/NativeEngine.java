@@ -0,0 +1,96 @@
+package com.flugtag.ocr;
+
+import java.io.IOException;
+
+import android.graphics.Rect;
+
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * Runs the native stages: ImageDecoder, a Preprocessor, a
+ * TextSlicer per detected page and the shared ParallelRecognizer.
+ */
+public class NativeEngine implements OcrEngine {
+	private final Preprocessor preprocessor;
+	private final ParallelRecognizer recognizer;
+	private DebugImageWriter debug;
+	private String detectorSignature;
+
+	/**
+	 * Recognize on the shared recognizer.
+	 *
+	 * @param preprocessor Prepares decoded images and applies the retry chains
+	 */
+	public NativeEngine(Preprocessor preprocessor) {
+		this(preprocessor, ParallelRecognizer.getInstance());
+	}
+
+	/**
+	 * @param preprocessor Prepares decoded images and applies the retry chains
+	 * @param recognizer Recognizes the text areas
+	 */
+	public NativeEngine(Preprocessor preprocessor, ParallelRecognizer recognizer) {
+		this.preprocessor = preprocessor;
+		this.recognizer = recognizer;
+	}
+
+	/**
+	 * @return the preprocessor, for frames that skip decode()
+	 */
+	public Preprocessor getPreprocessor() {
+		return preprocessor;
+	}
+
+	@Override
+	public void setDebugImageWriter(DebugImageWriter debug) {
+		this.debug = debug;
+		preprocessor.setDebugImageWriter(debug);
+	}
+
+	@Override
+	public String getSignature() {
+		if(detectorSignature == null){
+			// A slicer only lives for one page, so read its profile from a spare one
+			TextSlicer slicer = TextSlicer.create(false);
+			try {
+				detectorSignature = slicer.getSignature();
+			} finally {
+				slicer.release();
+			}
+		}
+		return preprocessor.getSignature() + ";" + detectorSignature + ";" + recognizer.getSignature();
+	}
+
+	@Override
+	public RecognitionProfile getProfile() {
+		return recognizer.getProfile();
+	}
+
+	@Override
+	public TextRegions decode(ImageDecoder.Source source) throws IOException {
+		Pix pix = ImageDecoder.decodeGray(source, preprocessor.getMaxImageArea());
+		return pix != null ? new TextRegions(TextRegions.DECODED, pix, new Rect[0]) : null;
+	}
+
+	@Override
+	public TextRegions detect(TextRegions decoded) {
+		TextSlicer slicer = TextSlicer.create(debug != null);
+		slicer.setDebugImageWriter(debug);
+		try {
+			return slicer.detect(preprocessor.process(decoded.getPage()));
+		} finally {
+			slicer.release();
+		}
+	}
+
+	@Override
+	public TextRegions retry(TextRegions regions, AdaptiveRecognizer.Chain chain, Rect[] boxes) {
+		return new TextRegions(chain.getName(), chain.apply(preprocessor, regions.getPage().clone()), boxes);
+	}
+
+	@Override
+	public RecognitionResult recognize(TextRegions regions, LineListener listener,
+			ProfileSelector selector) {
+		return recognizer.recognize(regions, listener, selector);
+	}
+}
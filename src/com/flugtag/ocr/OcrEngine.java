@@ -0,0 +1,79 @@
+package com.flugtag.ocr;
+
+import java.io.IOException;
+
+import android.graphics.Rect;
+
+/**
+ * The native stages of reading a receipt: decoding, preprocessing
+ * and text detection on Leptonica, recognition on Tesseract.
+ *
+ * Everything between the stages is Java and runs the same over
+ * any engine: the weak line retries, column splitting and row
+ * pairing, the order of the lines and the assembled text.
+ * NativeEngine runs the real stages; the regression harness can
+ * stand in for them with recordings, so that logic runs on a
+ * plain JVM.
+ *
+ * Pages are handed between the stages as TextRegions. Pages of a
+ * stand-in have a size and depth but no Pix.
+ */
+public interface OcrEngine {
+
+	/**
+	 * @param debug Where to write intermediate images, may be null
+	 */
+	public void setDebugImageWriter(DebugImageWriter debug);
+
+	/**
+	 * Describe every setting of the stages that changes the text
+	 * read from an image, for the result cache key.
+	 *
+	 * @return The signature of the engine
+	 */
+	public String getSignature();
+
+	/**
+	 * @return the profile lines are read with when none is picked
+	 */
+	public RecognitionProfile getProfile();
+
+	/**
+	 * Decode an image to 8bpp grayscale.
+	 *
+	 * @param source The encoded receipt image
+	 * @return The image as a page without text areas, or null if it could not be decoded
+	 * @throws IOException if the image could not be read
+	 */
+	public TextRegions decode(ImageDecoder.Source source) throws IOException;
+
+	/**
+	 * Preprocess a decoded image and detect its text areas.
+	 *
+	 * @param decoded A page from decode(), recycled
+	 * @return The preprocessed page and its text areas, sorted top to bottom
+	 */
+	public TextRegions detect(TextRegions decoded);
+
+	/**
+	 * Preprocess a page again with a retry chain.
+	 *
+	 * @param regions The page to retry, not recycled
+	 * @param chain The chain to apply, one that accepts the depth of the page
+	 * @param boxes The text areas to read on the new page
+	 * @return The new page named after the chain, with the provided boxes
+	 */
+	public TextRegions retry(TextRegions regions, AdaptiveRecognizer.Chain chain, Rect[] boxes);
+
+	/**
+	 * Recognize every text area of a page as a single line.
+	 * The regions are not recycled.
+	 *
+	 * @param regions The page and its text areas, in reading order
+	 * @param listener Notified of each line, may be null
+	 * @param selector Picks the profile of each line
+	 * @return The recognized lines in the order of the boxes
+	 */
+	public RecognitionResult recognize(TextRegions regions, LineListener listener,
+			ProfileSelector selector);
+}
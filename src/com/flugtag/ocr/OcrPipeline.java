@@ -0,0 +1,374 @@
+package com.flugtag.ocr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import android.util.Log;
+
+/**
+ * Runs many receipts through decode, preprocessing, text
+ * detection and recognition at once.
+ *
+ * Every stage has its own threads and a bounded queue in front
+ * of it. While one receipt is being recognized the next ones
+ * are decoded and preprocessed. A stage that gets ahead blocks
+ * on the full queue of the stage after it, so at most
+ * (queue + threads) receipts per stage hold a native image.
+ *
+ * Completed and failed jobs are handed to the listener on
+ * the thread of the stage that finished them.
+ */
+public class OcrPipeline {
+	private static final String TAG = "OcrPipeline";
+
+	/**
+	 * Notified once for every submitted job.
+	 */
+	public interface Listener {
+		public void onReceiptComplete(ReceiptJob job);
+	}
+
+	/**
+	 * Thread and queue sizes of every stage.
+	 */
+	public static class Parameters {
+		public int decodeThreads;
+		public int decodeQueue;
+
+		public int preprocessThreads;
+		public int preprocessQueue;
+
+		public int detectThreads;
+		public int detectQueue;
+
+		public int recognizeThreads;
+		public int recognizeQueue;
+
+		public Parameters() {
+			decodeThreads = 1;
+			decodeQueue = 2;
+
+			preprocessThreads = 1;
+			preprocessQueue = 1;
+
+			detectThreads = 1;
+			detectQueue = 1;
+
+			// Recognition is already spread over the
+			// engines of the ParallelRecognizer
+			recognizeThreads = 1;
+			recognizeQueue = 1;
+		}
+	}
+
+	private final Listener listener;
+	private final Preprocessor preprocessor;
+	private final ParallelRecognizer recognizer;
+
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private final List<Thread> threads = new ArrayList<Thread>();
+
+	/** Guards pending. */
+	private final Object lock = new Object();
+	private int pending;
+
+	/**
+	 * Construct a pipeline using the shared recognizer.
+	 *
+	 * @param params The thread and queue sizes of every stage
+	 * @param listener Notified as each job completes
+	 */
+	public OcrPipeline(Parameters params, Listener listener) {
+		this(params, listener, new Preprocessor(), ParallelRecognizer.getInstance());
+	}
+
+	/**
+	 * @param params The thread and queue sizes of every stage
+	 * @param listener Notified as each job completes
+	 * @param preprocessor Prepares decoded images for detection
+	 * @param recognizer Recognizes the detected text areas
+	 */
+	public OcrPipeline(Parameters params, Listener listener,
+			Preprocessor preprocessor, ParallelRecognizer recognizer) {
+		this.listener = listener;
+		this.preprocessor = preprocessor;
+		this.recognizer = recognizer;
+
+		stages.add(new DecodeStage(params.decodeThreads, params.decodeQueue));
+		stages.add(new PreprocessStage(params.preprocessThreads, params.preprocessQueue));
+		stages.add(new DetectStage(params.detectThreads, params.detectQueue));
+		stages.add(new RecognizeStage(params.recognizeThreads, params.recognizeQueue));
+
+		for(int i=0;i<stages.size()-1;i++){
+			stages.get(i).next = stages.get(i+1);
+		}
+	}
+
+	/**
+	 * Start the threads of every stage.
+	 */
+	public synchronized void start() {
+		if(!threads.isEmpty()){
+			throw new IllegalStateException("Pipeline already started");
+		}
+
+		for(Stage stage : stages){
+			for(int i=0;i<stage.threadCount;i++){
+				Thread thread = new Thread(stage, "OcrPipeline " + stage.name + " #" + (i+1));
+				thread.setDaemon(true);
+				threads.add(thread);
+				thread.start();
+			}
+		}
+	}
+
+	/**
+	 * Queue a receipt. Blocks while the decode queue is full.
+	 *
+	 * @param job The receipt to process
+	 * @throws InterruptedException
+	 */
+	public void submit(ReceiptJob job) throws InterruptedException {
+		synchronized(lock){
+			pending++;
+		}
+		job.setSubmitMillis(System.currentTimeMillis());
+
+		try {
+			stages.get(0).queue.put(job);
+		} catch (InterruptedException e) {
+			complete(job);
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait until every submitted job has completed.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void awaitIdle() throws InterruptedException {
+		synchronized(lock){
+			while(pending > 0){
+				lock.wait();
+			}
+		}
+	}
+
+	/**
+	 * Wait for the submitted jobs to complete, then stop
+	 * the threads of every stage.
+	 *
+	 * @throws InterruptedException
+	 */
+	public synchronized void shutdown() throws InterruptedException {
+		awaitIdle();
+
+		for(Thread thread : threads){
+			thread.interrupt();
+		}
+		for(Thread thread : threads){
+			thread.join();
+		}
+		threads.clear();
+	}
+
+	/**
+	 * Stop the threads of every stage without waiting for the
+	 * submitted jobs, such as when the caller was interrupted.
+	 * Jobs being processed are finished first, jobs still queued
+	 * are completed as failed. Does nothing once shut down.
+	 */
+	public synchronized void stopNow() {
+		for(Thread thread : threads){
+			thread.interrupt();
+		}
+
+		// Clear the interrupt of the caller so the joins can wait
+		boolean interrupted = Thread.interrupted();
+		for(Thread thread : threads){
+			while(thread.isAlive()){
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		threads.clear();
+
+		List<ReceiptJob> left = new ArrayList<ReceiptJob>();
+		for(Stage stage : stages){
+			stage.queue.drainTo(left);
+		}
+		for(ReceiptJob job : left){
+			job.recycle();
+			job.setError(new InterruptedException("Pipeline stopped"));
+			complete(job);
+		}
+
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void complete(ReceiptJob job) {
+		job.setCompleteMillis(System.currentTimeMillis());
+		try {
+			listener.onReceiptComplete(job);
+		} finally {
+			synchronized(lock){
+				pending--;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private void fail(ReceiptJob job, Throwable t) {
+		Log.e(TAG, "Failed to process " + job.getFile(), t);
+		job.recycle();
+		job.setError(t);
+		complete(job);
+	}
+
+	/**
+	 * One step of the pipeline with its bounded input queue.
+	 */
+	private abstract class Stage implements Runnable {
+		final String name;
+		final int threadCount;
+		final BlockingQueue<ReceiptJob> queue;
+		Stage next;
+
+		Stage(String name, int threadCount, int queueCapacity) {
+			if(threadCount < 1 || queueCapacity < 1){
+				throw new IllegalArgumentException(name + " threads and queue must be >= 1");
+			}
+			this.name = name;
+			this.threadCount = threadCount;
+			this.queue = new ArrayBlockingQueue<ReceiptJob>(queueCapacity);
+		}
+
+		/**
+		 * Process a job in place.
+		 */
+		abstract void process(ReceiptJob job) throws Exception;
+
+		/**
+		 * Free what a thread of the stage holds, called on
+		 * that thread as it stops.
+		 */
+		void finish() {
+		}
+
+		@Override
+		public void run() {
+			try {
+				take();
+			} finally {
+				finish();
+			}
+		}
+
+		private void take() {
+			while(!Thread.currentThread().isInterrupted()){
+				ReceiptJob job;
+				try {
+					job = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				// Anything escaping here would kill the thread with the job pending for good
+				try {
+					process(job);
+				} catch (Throwable t) {
+					fail(job, t);
+					continue;
+				}
+
+				if(next == null){
+					complete(job);
+					continue;
+				}
+
+				try {
+					next.queue.put(job);
+				} catch (InterruptedException e) {
+					fail(job, e);
+					return;
+				}
+			}
+		}
+	}
+
+	private class DecodeStage extends Stage {
+		DecodeStage(int threadCount, int queueCapacity) {
+			super("decode", threadCount, queueCapacity);
+		}
+
+		@Override
+		void process(ReceiptJob job) throws IOException {
+			job.pix = ImageDecoder.decodeGray(job.getFile(), preprocessor.getMaxImageArea());
+			if(job.pix == null){
+				throw new IOException("Could not decode " + job.getFile());
+			}
+		}
+	}
+
+	private class PreprocessStage extends Stage {
+		PreprocessStage(int threadCount, int queueCapacity) {
+			super("preprocess", threadCount, queueCapacity);
+		}
+
+		@Override
+		void process(ReceiptJob job) {
+			job.pix = preprocessor.process(job.pix);
+		}
+	}
+
+	private class DetectStage extends Stage {
+		/** Detectors are native and single threaded, one per thread. */
+		private final ThreadLocal<TextSlicer> slicer = new ThreadLocal<TextSlicer>();
+
+		DetectStage(int threadCount, int queueCapacity) {
+			super("detect", threadCount, queueCapacity);
+		}
+
+		@Override
+		void process(ReceiptJob job) {
+			TextSlicer threadSlicer = slicer.get();
+			if(threadSlicer == null){
+				threadSlicer = TextSlicer.create(false);
+				slicer.set(threadSlicer);
+			}
+			TextRegions regions = threadSlicer.detect(job.pix);
+			job.pix = null;
+			job.regions = regions;
+		}
+
+		@Override
+		void finish() {
+			TextSlicer threadSlicer = slicer.get();
+			if(threadSlicer != null){
+				threadSlicer.release();
+				slicer.remove();
+			}
+		}
+	}
+
+	private class RecognizeStage extends Stage {
+		RecognizeStage(int threadCount, int queueCapacity) {
+			super("recognize", threadCount, queueCapacity);
+		}
+
+		@Override
+		void process(ReceiptJob job) {
+			job.setResult(recognizer.recognize(job.regions, null));
+			job.recycle();
+		}
+	}
+}
@@ -0,0 +1,420 @@
+package com.flugtag.ocr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Rect;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.metrics.Timer;
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.Pixa;
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+/**
+ * Recognizes the lines of a receipt on several Tesseract
+ * engines at once.
+ *
+ * Each worker borrows one engine from the pool and takes the
+ * next unrecognized line until none are left. Results are
+ * stored by line index, so the text is put back together in
+ * the order of the source Pixa no matter which line finishes
+ * first. The calling thread acts as one of the workers.
+ *
+ * Lines can be given either as cropped images in a Pixa, or as
+ * boxes on the whole page. With boxes each engine is given the
+ * page once and pointed at one box after another with
+ * setRectangle(), so no line is copied or re-ingested.
+ */
+public class ParallelRecognizer {
+
+	/** Seconds an idle worker thread is kept alive. */
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	/** Engines are memory hungry, don't use more than this by default. */
+	private static final int MAX_DEFAULT_WORKERS = 2;
+
+	private static ParallelRecognizer instance;
+
+	private final TessEnginePool pool;
+	private final ThreadPoolExecutor executor;
+
+	private int workerCount;
+	private volatile RecognitionProfile profile = RecognitionProfile.RECEIPT_FAST;
+
+	/**
+	 * Construct a recognizer that borrows engines from the provided pool.
+	 *
+	 * @param pool The pool to take engines from
+	 * @param workerCount The number of lines to recognize at once
+	 */
+	public ParallelRecognizer(TessEnginePool pool, int workerCount) {
+		this.pool = pool;
+
+		// The calling thread is a worker, so the executor
+		// never needs more than workerCount - 1 threads.
+		this.executor = new ThreadPoolExecutor(
+				0, 1,
+				KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(),
+				new WorkerThreadFactory(),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+
+		setWorkerCount(workerCount);
+	}
+
+	/**
+	 * Get the application wide recognizer, backed by
+	 * the shared engine pool.
+	 *
+	 * @return The shared ParallelRecognizer
+	 */
+	public static synchronized ParallelRecognizer getInstance() {
+		if(instance == null){
+			int cpus = Runtime.getRuntime().availableProcessors();
+			instance = new ParallelRecognizer(
+					TessEnginePool.getInstance(),
+					Math.min(cpus, MAX_DEFAULT_WORKERS));
+		}
+		return instance;
+	}
+
+	/**
+	 * Set the number of lines recognized at once. Each worker
+	 * holds its own engine, so the pool is grown to keep that
+	 * many engines warm.
+	 *
+	 * @param workerCount The number of workers, at least 1
+	 */
+	public synchronized void setWorkerCount(int workerCount) {
+		if(workerCount < 1){
+			throw new IllegalArgumentException("Worker count must be >= 1");
+		}
+		this.workerCount = workerCount;
+		executor.setMaximumPoolSize(Math.max(1, workerCount - 1));
+
+		if(pool.getMaxIdle() < workerCount){
+			pool.setMaxIdle(workerCount);
+		}
+	}
+
+	/**
+	 * @return the number of lines recognized at once
+	 */
+	public synchronized int getWorkerCount() {
+		return workerCount;
+	}
+
+	/**
+	 * @param profile The settings lines are read with unless a selector picks others
+	 */
+	public void setProfile(RecognitionProfile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * @return the settings lines are read with unless a selector picks others
+	 */
+	public RecognitionProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Describe the engine settings lines are recognized with.
+	 *
+	 * @return The signature of the recognition settings
+	 */
+	public String getSignature() {
+		return "lang=" + pool.getLanguage() + ",profile=" + profile.getSignature();
+	}
+
+	/**
+	 * Recognize every Pix of the provided Pixa as a single line.
+	 * The Pixa is not recycled.
+	 *
+	 * @param pixa The text areas, in reading order
+	 * @return The recognized lines in the order of the Pixa
+	 */
+	public RecognitionResult recognize(Pixa pixa) {
+		return recognize(pixa, null);
+	}
+
+	/**
+	 * Recognize every Pix of the provided Pixa as a single line,
+	 * reporting each line as soon as it is recognized. The listener
+	 * is called on the worker threads. The Pixa is not recycled.
+	 *
+	 * @param pixa The text areas, in reading order
+	 * @param listener Notified of each line, may be null
+	 * @return The recognized lines in the order of the Pixa
+	 */
+	public RecognitionResult recognize(Pixa pixa, LineListener listener) {
+		// Leptonica reference counts aren't atomic, so take
+		// every clone here rather than on the workers.
+		int[] geometries = pixa.getBoxGeometries();
+		int num = geometries.length / 4;
+		Pix[] lines = new Pix[num];
+		Rect[] boxes = new Rect[num];
+		for(int i=0;i<num;i++){
+			lines[i] = pixa.getPix(i);
+			boxes[i] = Pixa.toRect(geometries, i);
+		}
+
+		Timer timer = Timer.start(MetricsRegistry.RECOGNIZE);
+		try {
+			LineResult[] results = new LineResult[num];
+			run(new LineWorker(lines, boxes, results, listener, profile), workersFor(num));
+			return new RecognitionResult(results);
+		} finally {
+			timer.stop();
+			for(Pix line : lines){
+				if(line != null){
+					line.recycle();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recognize every text area of a page as a single line,
+	 * reporting each line as soon as it is recognized. The listener
+	 * is called on the worker threads. The regions are not recycled.
+	 *
+	 * @param regions The page and its text areas, in reading order
+	 * @param listener Notified of each line, may be null
+	 * @return The recognized lines in the order of the boxes
+	 */
+	public RecognitionResult recognize(TextRegions regions, LineListener listener) {
+		return recognize(regions, listener, profile);
+	}
+
+	/**
+	 * Recognize every text area of a page as a single line, each
+	 * with the profile picked for it. Engines are switched between
+	 * profiles without being initialized again.
+	 *
+	 * @param regions The page and its text areas, in reading order
+	 * @param listener Notified of each line, may be null
+	 * @param selector Picks the profile of each line
+	 * @return The recognized lines in the order of the boxes
+	 */
+	public RecognitionResult recognize(TextRegions regions, LineListener listener,
+			ProfileSelector selector) {
+		int num = regions.size();
+		if(num == 0){
+			return new RecognitionResult(new LineResult[0]);
+		}
+		int workers = workersFor(num);
+
+		// Tesseract clones the image it is given and Leptonica
+		// reference counts aren't atomic, so every extra worker
+		// gets its own copy of the page.
+		Pix[] pages = new Pix[workers];
+		pages[0] = regions.getPage();
+		for(int i=1;i<pages.length;i++){
+			pages[i] = pages[0].copy();
+		}
+
+		Timer timer = Timer.start(MetricsRegistry.RECOGNIZE);
+		try {
+			LineResult[] results = new LineResult[num];
+			run(new RegionWorker(pages, regions.getBoxes(), results, listener, selector), workers);
+			return new RecognitionResult(results);
+		} finally {
+			timer.stop();
+			for(int i=1;i<pages.length;i++){
+				pages[i].recycle();
+			}
+		}
+	}
+
+	private int workersFor(int num) {
+		return Math.min(getWorkerCount(), num);
+	}
+
+	/**
+	 * Run the worker on the provided number of threads, the
+	 * calling thread included, and wait for all to finish.
+	 * Every worker is waited for even if one fails, since the
+	 * caller recycles the lines afterwards.
+	 */
+	private void run(Callable<Void> worker, int workers) {
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+		for(int i=1;i<workers;i++){
+			futures.add(executor.submit(worker));
+		}
+
+		Throwable failure = null;
+		try {
+			worker.call();
+		} catch (Exception e) {
+			failure = e;
+		}
+
+		boolean interrupted = false;
+		for(Future<Void> future : futures){
+			while(true){
+				try {
+					future.get();
+					break;
+				} catch (ExecutionException e) {
+					if(failure == null){
+						failure = e.getCause();
+					}
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+
+		if(failure instanceof RuntimeException){
+			throw (RuntimeException) failure;
+		} else if(failure instanceof Error){
+			throw (Error) failure;
+		} else if(failure != null){
+			throw new RuntimeException("Line recognition failed", failure);
+		}
+	}
+
+	/**
+	 * Takes the next unrecognized line until none are left,
+	 * using one engine for its whole run.
+	 */
+	private class LineWorker implements Callable<Void> {
+		private final Pix[] lines;
+		private final Rect[] boxes;
+		private final LineResult[] results;
+		private final LineListener listener;
+		private final RecognitionProfile profile;
+		private final AtomicInteger next = new AtomicInteger();
+
+		LineWorker(Pix[] lines, Rect[] boxes, LineResult[] results, LineListener listener,
+				RecognitionProfile profile) {
+			this.lines = lines;
+			this.boxes = boxes;
+			this.results = results;
+			this.listener = listener;
+			this.profile = profile;
+		}
+
+		@Override
+		public Void call() {
+			TessBaseAPI engine = pool.acquire();
+			try {
+				profile.apply(engine);
+
+				int i;
+				while((i = next.getAndIncrement()) < lines.length){
+					Timer timer = Timer.start(MetricsRegistry.RECOGNIZE_LINE);
+					engine.setImage(lines[i]);
+					LineResult line = new LineResult(
+							i,
+							engine.getUTF8Text(),
+							engine.meanConfidence(),
+							boxes[i]);
+					engine.clear();
+					timer.stop();
+
+					results[i] = line;
+					if(listener != null){
+						listener.onLineRecognized(line);
+					}
+				}
+			} finally {
+				pool.release(engine);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Takes the next unrecognized box until none are left,
+	 * using one engine and one copy of the page for its whole run.
+	 */
+	private class RegionWorker implements Callable<Void> {
+		private final Pix[] pages;
+		private final Rect[] boxes;
+		private final LineResult[] results;
+		private final LineListener listener;
+		private final ProfileSelector selector;
+		private final AtomicInteger nextPage = new AtomicInteger();
+		private final AtomicInteger next = new AtomicInteger();
+
+		RegionWorker(Pix[] pages, Rect[] boxes, LineResult[] results, LineListener listener,
+				ProfileSelector selector) {
+			this.pages = pages;
+			this.boxes = boxes;
+			this.results = results;
+			this.listener = listener;
+			this.selector = selector;
+		}
+
+		@Override
+		public Void call() {
+			Pix page = pages[nextPage.getAndIncrement()];
+			TessBaseAPI engine = pool.acquire();
+			try {
+				engine.setImage(page);
+
+				// Engines come back from the pool with whatever
+				// profile they last used, so always apply the first.
+				RecognitionProfile applied = null;
+				int i;
+				while((i = next.getAndIncrement()) < boxes.length){
+					Timer timer = Timer.start(MetricsRegistry.RECOGNIZE_LINE);
+					Rect box = boxes[i];
+					RecognitionProfile wanted = selector.select(i, box);
+					if(wanted != applied){
+						wanted.apply(engine);
+						applied = wanted;
+					}
+					// Setting the rectangle drops the previous results
+					engine.setRectangle(box.left, box.top, box.width(), box.height());
+					LineResult line = new LineResult(
+							i,
+							engine.getUTF8Text(),
+							engine.meanConfidence(),
+							box,
+							engine.wordConfidences());
+					timer.stop();
+
+					results[i] = line;
+					if(listener != null){
+						listener.onLineRecognized(line);
+					}
+				}
+			} finally {
+				pool.release(engine);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Names the worker threads and runs them in the background.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ParallelRecognizer #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package com.flugtag.ocr;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.googlecode.leptonica.android.NativeLeakTracker;
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.ReadFile;
+
+/**
+ * Keeps 8bpp Pix of recently used sizes for reuse, so decode
+ * targets and camera frames of the same size are refilled with
+ * ReadFile.replaceBytes8() instead of allocated natively every
+ * time.
+ *
+ * Only Pix handed out by the pool go back into it, and only
+ * when nothing else shares their raster. Every other Pix passed
+ * to recycle() is simply recycled, so callers can use it for
+ * any Pix they own. Once the pooled bytes pass the cap, the
+ * sizes used least recently are freed first.
+ */
+public class PixPool {
+
+	/** Room for a few decode targets at the largest processed size. */
+	public static final long DEFAULT_MAX_BYTES = 8L * Preprocessor.MAX_IMAGE_AREA;
+
+	private static final PixPool instance = new PixPool(DEFAULT_MAX_BYTES);
+
+	private final long maxBytes;
+	private long bytes;
+
+	/** Free Pix by size, least recently used size first. */
+	private final LinkedHashMap<Long, List<Pix>> free =
+			new LinkedHashMap<Long, List<Pix>>(16, 0.75f, true);
+
+	/** The Pix handed out, weak so those recycled elsewhere drop out. */
+	private final Map<Pix, Boolean> lent = new WeakHashMap<Pix, Boolean>();
+
+	/**
+	 * @param maxBytes The most bytes of free Pix to keep
+	 */
+	public PixPool(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the application wide pool
+	 */
+	public static PixPool getDefault() {
+		return instance;
+	}
+
+	/**
+	 * Get an 8bpp Pix holding the provided pixels, reusing a
+	 * free Pix of the same size if there is one.
+	 *
+	 * @param pixelData 8bpp grayscale pixels, one byte per pixel
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @return The Pix, to be handed back with recycle()
+	 */
+	public Pix readBytes8(byte[] pixelData, int width, int height) {
+		Pix pix = take(width, height);
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		if(pix != null){
+			if(ReadFile.replaceBytes8(pix, pixelData, width, height)){
+				metrics.counter(MetricsRegistry.POOL_HITS).increment();
+				return pix;
+			}
+			pix.recycle();
+		}
+
+		metrics.counter(MetricsRegistry.POOL_MISSES).increment();
+		pix = ReadFile.readBytes8(pixelData, width, height);
+		synchronized(this){
+			lent.put(pix, Boolean.TRUE);
+		}
+		return pix;
+	}
+
+	/**
+	 * Hand back a Pix. A Pix from this pool is kept for reuse,
+	 * any other is recycled.
+	 *
+	 * @param pix A Pix the caller owns, may be null
+	 */
+	public void recycle(Pix pix) {
+		if(pix == null){
+			return;
+		}
+
+		List<Pix> evicted;
+		synchronized(this){
+			if(lent.remove(pix) == null){
+				pix.recycle();
+				return;
+			}
+
+			long key = key(pix.getWidth(), pix.getHeight());
+			List<Pix> list = free.get(key);
+			if(list == null){
+				list = new ArrayList<Pix>();
+				free.put(key, list);
+			}
+			list.add(pix);
+			bytes += size(pix);
+			// Free Pix are the pool's, not a leak of whoever returned them
+			NativeLeakTracker.pooled(pix);
+			evicted = trim(maxBytes);
+		}
+
+		for(Pix old : evicted){
+			old.recycle();
+		}
+	}
+
+	/**
+	 * Stop pooling a Pix that has been cloned, so its raster is
+	 * never refilled under the clone. It is left to the caller
+	 * to recycle.
+	 *
+	 * @param pix A Pix from this pool
+	 */
+	public synchronized void forget(Pix pix) {
+		lent.remove(pix);
+	}
+
+	/**
+	 * Free every pooled Pix, for when the app is short of memory.
+	 */
+	public void clear() {
+		List<Pix> evicted;
+		synchronized(this){
+			evicted = trim(0);
+		}
+		for(Pix old : evicted){
+			old.recycle();
+		}
+	}
+
+	/**
+	 * @return the bytes held by free Pix
+	 */
+	public synchronized long getPooledBytes() {
+		return bytes;
+	}
+
+	private synchronized Pix take(int width, int height) {
+		List<Pix> list = free.get(key(width, height));
+		if(list == null || list.isEmpty()){
+			return null;
+		}
+
+		Pix pix = list.remove(list.size() - 1);
+		if(list.isEmpty()){
+			free.remove(key(width, height));
+		}
+		bytes -= size(pix);
+		lent.put(pix, Boolean.TRUE);
+		NativeLeakTracker.reused(pix);
+		return pix;
+	}
+
+	/**
+	 * Remove free Pix, least recently used size first, until
+	 * no more than the provided bytes are pooled.
+	 *
+	 * @return The removed Pix, to be recycled outside the lock
+	 */
+	private List<Pix> trim(long limit) {
+		List<Pix> evicted = new ArrayList<Pix>();
+		Iterator<List<Pix>> lists = free.values().iterator();
+		while(bytes > limit && lists.hasNext()){
+			List<Pix> list = lists.next();
+			while(bytes > limit && !list.isEmpty()){
+				Pix pix = list.remove(0);
+				bytes -= size(pix);
+				evicted.add(pix);
+			}
+			if(list.isEmpty()){
+				lists.remove();
+			}
+		}
+		return evicted;
+	}
+
+	private static long key(int width, int height) {
+		return ((long) width << 32) | (height & 0xffffffffL);
+	}
+
+	private static long size(Pix pix) {
+		return (long) pix.getWidth() * pix.getHeight();
+	}
+}
@@ -0,0 +1,286 @@
+package com.flugtag.ocr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.metrics.Timer;
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * An ordered list of preprocessing steps, loadable from a
+ * config file so chains can be changed without a rebuild.
+ *
+ * A config file has one step per line, its name followed by
+ * any parameters to change as key=value pairs. Lines starting
+ * with # are comments. A file may hold several chains, each
+ * starting with its name in square brackets:
+ *
+ * <pre>
+ * [default]
+ * scale maxArea=921600
+ * convertTo8
+ * adaptiveMap reduction=16 size=3 bgValue=200
+ *
+ * [sharp]
+ * scale
+ * convertTo8
+ * unsharp halfWidth=2 fraction=0.5
+ * </pre>
+ *
+ * Chains start from the 8bpp decoded image and must end at 8bpp,
+ * which the text detector and the retries of the AdaptiveRecognizer
+ * need. Binarizing steps like otsu can only be followed by steps
+ * that take 1bpp images and a convertTo8. The depths are checked
+ * when a chain is created.
+ */
+public class PreprocessChain {
+
+	/** The steps of the Preprocessor before chains were configurable. */
+	public static final String DEFAULT_CONFIG =
+			"[default]\n" +
+			"scale\n" +
+			"convertTo8\n" +
+			"adaptiveMap\n";
+
+	/** The depth of the images chains are applied to, see ImageDecoder.decodeGray(). */
+	public static final int INPUT_DEPTH = 8;
+
+	/** The depth chains must leave images at. */
+	public static final int OUTPUT_DEPTH = 8;
+
+	private final String name;
+	private final List<PreprocessStep> steps;
+
+	/**
+	 * @param name A short name for logs and reports
+	 * @param steps The steps, in the order they are applied
+	 * @throws IllegalArgumentException if a step can't take the depth left by the one before
+	 */
+	public PreprocessChain(String name, List<PreprocessStep> steps) {
+		this.name = name;
+		this.steps = new ArrayList<PreprocessStep>(steps);
+		checkDepths();
+	}
+
+	/**
+	 * Create the default chain: scale, convertTo8, adaptiveMap.
+	 *
+	 * @param maxImageArea Images larger than this many pixels are scaled down
+	 * @return The default chain
+	 */
+	public static PreprocessChain createDefault(int maxImageArea) {
+		PreprocessChain chain;
+		try {
+			chain = parse(new StringReader(DEFAULT_CONFIG)).get(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		chain.steps.get(0).set("maxArea", Integer.toString(maxImageArea));
+		return chain;
+	}
+
+	/**
+	 * Load the first chain of a config file.
+	 *
+	 * @param file The config file
+	 * @return The chain
+	 * @throws IOException
+	 */
+	public static PreprocessChain load(File file) throws IOException {
+		List<PreprocessChain> chains = loadAll(file);
+		if(chains.isEmpty()){
+			throw new IllegalArgumentException("No preprocessing chain in " + file);
+		}
+		return chains.get(0);
+	}
+
+	/**
+	 * Load every chain of a config file.
+	 *
+	 * @param file The config file
+	 * @return The chains in file order
+	 * @throws IOException
+	 */
+	public static List<PreprocessChain> loadAll(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			return parse(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parse every chain of a config. Steps before the first
+	 * [name] line belong to a chain named "default".
+	 *
+	 * @param config The config text
+	 * @return The chains in config order
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a line can't be parsed or a chain has steps of the wrong depth
+	 */
+	public static List<PreprocessChain> parse(Reader config) throws IOException {
+		BufferedReader reader = new BufferedReader(config);
+		List<PreprocessChain> chains = new ArrayList<PreprocessChain>();
+
+		String chainName = "default";
+		List<PreprocessStep> steps = new ArrayList<PreprocessStep>();
+		int lineNumber = 0;
+		String line;
+		while((line = reader.readLine()) != null){
+			lineNumber++;
+			line = line.trim();
+			if(line.length() == 0 || line.startsWith("#")){
+				continue;
+			}
+
+			if(line.startsWith("[") && line.endsWith("]")){
+				if(!steps.isEmpty()){
+					chains.add(new PreprocessChain(chainName, steps));
+				}
+				chainName = line.substring(1, line.length() - 1).trim();
+				steps = new ArrayList<PreprocessStep>();
+				continue;
+			}
+
+			try {
+				steps.add(parseStep(line));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage());
+			}
+		}
+		if(!steps.isEmpty()){
+			chains.add(new PreprocessChain(chainName, steps));
+		}
+
+		return chains;
+	}
+
+	private static PreprocessStep parseStep(String line) {
+		String[] tokens = line.split("\\s+");
+		PreprocessStep step = PreprocessSteps.create(tokens[0]);
+		for(int i=1;i<tokens.length;i++){
+			int equals = tokens[i].indexOf('=');
+			if(equals <= 0){
+				throw new IllegalArgumentException("Expected key=value, got " + tokens[i]);
+			}
+			step.set(tokens[i].substring(0, equals), tokens[i].substring(equals + 1));
+		}
+		return step;
+	}
+
+	/**
+	 * Follow the depth of the image through the steps.
+	 */
+	private void checkDepths() {
+		int depth = INPUT_DEPTH;
+		for(PreprocessStep step : steps){
+			if(!step.accepts(depth)){
+				throw new IllegalArgumentException("Chain " + name + ": " + step.getName()
+						+ " can't take " + depth + "bpp images");
+			}
+			depth = step.getOutputDepth(depth);
+		}
+		if(depth != OUTPUT_DEPTH){
+			throw new IllegalArgumentException("Chain " + name + " ends at " + depth
+					+ "bpp, it must end at " + OUTPUT_DEPTH + "bpp");
+		}
+	}
+
+	/**
+	 * Run every step. The input is recycled, as is the output
+	 * of every step but the last. Pix from the PixPool go back
+	 * to it.
+	 *
+	 * @param pix The decoded image
+	 * @param debug Where to write the output of each step, may be null
+	 * @return The processed image
+	 */
+	public Pix process(Pix pix, DebugImageWriter debug) {
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		PixPool pool = PixPool.getDefault();
+		for(PreprocessStep step : steps){
+			Timer timer = Timer.start(step.getTimerName());
+			Pix temp;
+			try {
+				temp = step.apply(pix);
+			} catch (RuntimeException e) {
+				pix.recycle();
+				throw e;
+			}
+			timer.stop();
+
+			if(temp != pix){
+				metrics.counter(MetricsRegistry.NATIVE_ALLOCATIONS).increment();
+				if(temp.getNativePix() == pix.getNativePix()){
+					// A clone shares the raster, which must not be refilled
+					pool.forget(pix);
+				}
+				pool.recycle(pix);
+				if(debug != null){
+					debug.write(step.getName(), temp);
+				}
+			}
+			pix = temp;
+		}
+		return pix;
+	}
+
+	/**
+	 * @return the largest image area the chain processes without
+	 *         scaling, or Preprocessor.MAX_IMAGE_AREA if it never scales
+	 */
+	public int getMaxImageArea() {
+		for(PreprocessStep step : steps){
+			if(step instanceof PreprocessSteps.ScaleStep){
+				return ((PreprocessSteps.ScaleStep) step).maxArea;
+			}
+		}
+		return Preprocessor.MAX_IMAGE_AREA;
+	}
+
+	/**
+	 * @return the name of the chain
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the steps, in the order they are applied
+	 */
+	public List<PreprocessStep> getSteps() {
+		return Collections.unmodifiableList(steps);
+	}
+
+	/**
+	 * Describe every step and parameter. Chains with the same
+	 * signature give the same output.
+	 *
+	 * @return The signature of the chain
+	 */
+	public String getSignature() {
+		StringBuilder sb = new StringBuilder();
+		for(PreprocessStep step : steps){
+			if(sb.length() > 0){
+				sb.append(',');
+			}
+			sb.append(step.getSignature());
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + getSignature();
+	}
+}
@@ -0,0 +1,147 @@
+package com.flugtag.ocr;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * One step of a PreprocessChain.
+ *
+ * The parameters of a step are its public fields, so they
+ * can be set by name from a chain config file. Only int,
+ * float and boolean parameters are supported.
+ */
+public abstract class PreprocessStep {
+	private final String name;
+	private final String timerName;
+
+	/**
+	 * @param name The name of the step in config files
+	 * @param timerName The MetricsRegistry timer the step is recorded in
+	 */
+	protected PreprocessStep(String name, String timerName) {
+		this.name = name;
+		this.timerName = timerName;
+	}
+
+	/**
+	 * Process an image. The input is not recycled.
+	 *
+	 * @param pix The output of the previous step
+	 * @return A new image, or the input if there was nothing to do
+	 */
+	public abstract Pix apply(Pix pix);
+
+	/**
+	 * @param depth The bit depth of the previous step's output
+	 * @return true if the step can process images of that depth
+	 */
+	public boolean accepts(int depth) {
+		return true;
+	}
+
+	/**
+	 * @param depth The bit depth of the input, one the step accepts
+	 * @return the bit depth of the output
+	 */
+	public int getOutputDepth(int depth) {
+		return depth;
+	}
+
+	/**
+	 * @return the name of the step in config files
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the MetricsRegistry timer the step is recorded in
+	 */
+	public String getTimerName() {
+		return timerName;
+	}
+
+	/**
+	 * Set a parameter from its config file value.
+	 *
+	 * @param key The name of the parameter
+	 * @param value The value as text
+	 */
+	public void set(String key, String value) {
+		Field field;
+		try {
+			field = getClass().getField(key);
+		} catch (NoSuchFieldException e) {
+			throw new IllegalArgumentException(name + " has no parameter " + key);
+		}
+		if(Modifier.isStatic(field.getModifiers())){
+			throw new IllegalArgumentException(name + " has no parameter " + key);
+		}
+
+		try {
+			Class<?> type = field.getType();
+			if(type == int.class){
+				field.setInt(this, Integer.parseInt(value));
+			}else if(type == float.class){
+				field.setFloat(this, Float.parseFloat(value));
+			}else if(type == boolean.class){
+				field.setBoolean(this, Boolean.parseBoolean(value));
+			}else{
+				throw new IllegalArgumentException(name + "." + key + " can't be set");
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + "." + key + " is not a number: " + value);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(name + "." + key + " can't be set");
+		}
+	}
+
+	/**
+	 * Describe the step and every parameter, in the
+	 * syntax of a chain config file.
+	 *
+	 * @return The signature of the step
+	 */
+	public String getSignature() {
+		StringBuilder sb = new StringBuilder(name);
+		for(Field field : parameters()){
+			try {
+				sb.append(' ').append(field.getName()).append('=').append(field.get(this));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the public instance fields, sorted by name
+	 */
+	private Field[] parameters() {
+		Field[] fields = getClass().getFields();
+		int count = 0;
+		for(Field field : fields){
+			if(!Modifier.isStatic(field.getModifiers())){
+				fields[count++] = field;
+			}
+		}
+		Field[] params = new Field[count];
+		System.arraycopy(fields, 0, params, 0, count);
+		Arrays.sort(params, new Comparator<Field>() {
+			@Override
+			public int compare(Field a, Field b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return params;
+	}
+
+	@Override
+	public String toString() {
+		return getSignature();
+	}
+}
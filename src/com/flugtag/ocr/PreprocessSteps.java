@@ -0,0 +1,261 @@
+package com.flugtag.ocr;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.googlecode.eyesfree.textdetect.Thresholder;
+import com.googlecode.leptonica.android.AdaptiveMap;
+import com.googlecode.leptonica.android.Binarize;
+import com.googlecode.leptonica.android.Convert;
+import com.googlecode.leptonica.android.Enhance;
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.Rotate;
+import com.googlecode.leptonica.android.Scale;
+import com.googlecode.leptonica.android.Skew;
+
+/**
+ * The steps a PreprocessChain can be built from, one over
+ * each of the Leptonica wrappers. Defaults match the defaults
+ * of the wrappers.
+ */
+public class PreprocessSteps {
+
+	/**
+	 * Create a step with its default parameters.
+	 *
+	 * @param name The name of the step in config files
+	 * @return The step
+	 * @throws IllegalArgumentException if there is no step by that name
+	 */
+	public static PreprocessStep create(String name) {
+		if("scale".equals(name)){
+			return new ScaleStep();
+		}else if("convertTo8".equals(name)){
+			return new ConvertStep();
+		}else if("adaptiveMap".equals(name)){
+			return new AdaptiveMapStep();
+		}else if("otsu".equals(name)){
+			return new OtsuStep();
+		}else if("unsharp".equals(name)){
+			return new UnsharpStep();
+		}else if("edgeThreshold".equals(name)){
+			return new EdgeThresholdStep();
+		}else if("deskew".equals(name)){
+			return new DeskewStep();
+		}else if("rotate".equals(name)){
+			return new RotateStep();
+		}
+		throw new IllegalArgumentException("Unknown preprocessing step: " + name);
+	}
+
+	/**
+	 * Shrinks images larger than maxArea pixels.
+	 */
+	public static class ScaleStep extends PreprocessStep {
+		public int maxArea = Preprocessor.MAX_IMAGE_AREA;
+
+		public ScaleStep() {
+			super("scale", MetricsRegistry.RESIZE);
+		}
+
+		@Override
+		public Pix apply(Pix pix) {
+			int area = pix.getWidth() * pix.getHeight();
+			if(area <= maxArea){
+				return pix;
+			}
+			// Scale applies to both dimensions, so take the root of the area ratio
+			return Scale.scale(pix, (float) Math.sqrt(maxArea / (double) area));
+		}
+	}
+
+	/**
+	 * Converts to 8bpp grayscale, unless it already is.
+	 */
+	public static class ConvertStep extends PreprocessStep {
+		public ConvertStep() {
+			super("convertTo8", MetricsRegistry.CONVERT);
+		}
+
+		@Override
+		public Pix apply(Pix pix) {
+			if(pix.getDepth() == 8){
+				return pix;
+			}
+			return Convert.convertTo8(pix);
+		}
+
+		@Override
+		public int getOutputDepth(int depth) {
+			return 8;
+		}
+	}
+
+	/**
+	 * Normalizes the background with a morphological closing.
+	 */
+	public static class AdaptiveMapStep extends PreprocessStep {
+		public int reduction = 16;
+		public int size = 3;
+		public int bgValue = 200;
+
+		public AdaptiveMapStep() {
+			super("adaptiveMap", MetricsRegistry.ADAPTIVE_MAP);
+		}
+
+		@Override
+		public boolean accepts(int depth) {
+			return depth == 8 || depth == 32;
+		}
+
+		@Override
+		public Pix apply(Pix pix) {
+			return AdaptiveMap.backgroundNormMorph(pix, reduction, size, bgValue);
+		}
+	}
+
+	/**
+	 * Binarizes an 8bpp image with a tiled Otsu threshold.
+	 */
+	public static class OtsuStep extends PreprocessStep {
+		public int sizeX = Binarize.OTSU_SIZE_X;
+		public int sizeY = Binarize.OTSU_SIZE_Y;
+		public int smoothX = Binarize.OTSU_SMOOTH_X;
+		public int smoothY = Binarize.OTSU_SMOOTH_Y;
+		public float scoreFraction = Binarize.OTSU_SCORE_FRACTION;
+
+		public OtsuStep() {
+			super("otsu", MetricsRegistry.BINARIZE);
+		}
+
+		@Override
+		public boolean accepts(int depth) {
+			return depth == 8;
+		}
+
+		@Override
+		public int getOutputDepth(int depth) {
+			return 1;
+		}
+
+		@Override
+		public Pix apply(Pix pix) {
+			return Binarize.otsuAdaptiveThreshold(pix, sizeX, sizeY, smoothX, smoothY, scoreFraction);
+		}
+	}
+
+	/**
+	 * Sharpens with an unsharp mask.
+	 */
+	public static class UnsharpStep extends PreprocessStep {
+		public int halfWidth = 2;
+		public float fraction = 0.5f;
+
+		public UnsharpStep() {
+			super("unsharp", MetricsRegistry.ENHANCE);
+		}
+
+		@Override
+		public boolean accepts(int depth) {
+			return depth == 8 || depth == 32;
+		}
+
+		@Override
+		public Pix apply(Pix pix) {
+			return Enhance.unsharpMasking(pix, halfWidth, fraction);
+		}
+	}
+
+	/**
+	 * Binarizes an 8bpp image with a tiled edge threshold.
+	 */
+	public static class EdgeThresholdStep extends PreprocessStep {
+		public int tileX = Thresholder.EDGE_TILE_X;
+		public int tileY = Thresholder.EDGE_TILE_Y;
+		public int threshold = Thresholder.EDGE_THRESH;
+		public int average = Thresholder.EDGE_AVERAGE;
+
+		public EdgeThresholdStep() {
+			super("edgeThreshold", MetricsRegistry.THRESHOLD);
+		}
+
+		@Override
+		public boolean accepts(int depth) {
+			return depth == 8;
+		}
+
+		@Override
+		public int getOutputDepth(int depth) {
+			return 1;
+		}
+
+		@Override
+		public Pix apply(Pix pix) {
+			return Thresholder.edgeAdaptiveThreshold(pix, tileX, tileY, threshold, average);
+		}
+	}
+
+	/**
+	 * Measures the skew of the text and rotates it level.
+	 * Skew is measured on a binarized copy of 8bpp images.
+	 */
+	public static class DeskewStep extends PreprocessStep {
+		public float minAngle = 0.1f;
+		public float sweepRange = Skew.SWEEP_RANGE;
+		public float sweepDelta = Skew.SWEEP_DELTA;
+		public int sweepReduction = Skew.SWEEP_REDUCTION;
+		public int searchReduction = Skew.SEARCH_REDUCTION;
+		public float searchMinDelta = Skew.SEARCH_MIN_DELTA;
+
+		public DeskewStep() {
+			super("deskew", MetricsRegistry.DESKEW);
+		}
+
+		@Override
+		public boolean accepts(int depth) {
+			return depth == 1 || depth == 8;
+		}
+
+		@Override
+		public Pix apply(Pix pix) {
+			Pix binary = pix.getDepth() == 1 ? pix : Binarize.otsuAdaptiveThreshold(pix);
+			float angle;
+			try {
+				angle = Skew.findSkew(binary, sweepRange, sweepDelta, sweepReduction,
+						searchReduction, searchMinDelta);
+			} finally {
+				if(binary != pix){
+					binary.recycle();
+				}
+			}
+
+			if(Math.abs(angle) < minAngle){
+				return pix;
+			}
+			return Rotate.rotate(pix, angle);
+		}
+	}
+
+	/**
+	 * Rotates by a fixed angle, clockwise is positive.
+	 */
+	public static class RotateStep extends PreprocessStep {
+		public float degrees = 0;
+		public boolean quality = Rotate.ROTATE_QUALITY;
+
+		public RotateStep() {
+			super("rotate", MetricsRegistry.DESKEW);
+		}
+
+		@Override
+		public Pix apply(Pix pix) {
+			if(degrees == 0){
+				return pix;
+			}
+			return Rotate.rotate(pix, degrees, quality);
+		}
+	}
+
+	/**
+	 * Not instantiable, there are only static methods here.
+	 */
+	private PreprocessSteps(){};
+}
@@ -0,0 +1,184 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.util.Log;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.metrics.Timer;
+import com.flugtag.util.Paths;
+import com.googlecode.eyesfree.textdetect.Thresholder;
+import com.googlecode.leptonica.android.AdaptiveMap;
+import com.googlecode.leptonica.android.Binarize;
+import com.googlecode.leptonica.android.Convert;
+import com.googlecode.leptonica.android.Enhance;
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.Scale;
+
+/**
+ * Prepares a decoded receipt image for text detection.
+ * 
+ * process() runs the steps of a PreprocessChain. The single
+ * steps below are kept for callers that need just one, like
+ * the retries of the AdaptiveRecognizer. Each step recycles
+ * the Pix it is given and returns the processed copy.
+ */
+public class Preprocessor {
+	private static final String TAG = "Preprocessor";
+
+	/** We'd rather not process anything larger than 720p. */
+	public static final int MAX_IMAGE_AREA = 1280 * 720;
+
+	private final int maxImageArea;
+	private final PreprocessChain chain;
+	private DebugImageWriter debug;
+
+	public Preprocessor() {
+		this(MAX_IMAGE_AREA);
+	}
+
+	/**
+	 * @param maxImageArea Images larger than this many pixels are scaled down
+	 */
+	public Preprocessor(int maxImageArea) {
+		this(PreprocessChain.createDefault(maxImageArea));
+	}
+
+	/**
+	 * @param chain The steps process() runs
+	 */
+	public Preprocessor(PreprocessChain chain) {
+		this.chain = chain;
+		this.maxImageArea = chain.getMaxImageArea();
+	}
+
+	/**
+	 * Use the chain in the chain config file if there is one,
+	 * so chains can be tried without a rebuild.
+	 * 
+	 * @return The configured preprocessor, or the default one
+	 */
+	public static Preprocessor create() {
+		File config = new File(Paths.PREPROCESS_CHAIN);
+		if(config.exists()){
+			try {
+				PreprocessChain chain = PreprocessChain.load(config);
+				Log.i(TAG, "Preprocessing with " + chain);
+				return new Preprocessor(chain);
+			} catch (IOException e) {
+				Log.w(TAG, "Failed to read " + config, e);
+			} catch (IllegalArgumentException e) {
+				Log.w(TAG, "Invalid chain in " + config, e);
+			}
+		}
+		return new Preprocessor(MAX_IMAGE_AREA);
+	}
+
+	/**
+	 * @param debug Where to write the output of each step, may be null
+	 */
+	public void setDebugImageWriter(DebugImageWriter debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * @return the largest image area processed without scaling
+	 */
+	public int getMaxImageArea() {
+		return maxImageArea;
+	}
+
+	/**
+	 * Describe the steps of process() and their parameters.
+	 * Results of two Preprocessors with the same signature
+	 * are interchangeable.
+	 *
+	 * @return The signature of the preprocessing steps
+	 */
+	public String getSignature() {
+		return chain.getSignature();
+	}
+
+	/**
+	 * @return the steps process() runs
+	 */
+	public PreprocessChain getChain() {
+		return chain;
+	}
+
+	/**
+	 * Run the steps of the chain. The input is recycled.
+	 * 
+	 * @param pix The decoded image
+	 * @return The processed image
+	 */
+	public Pix process(Pix pix) {
+		return chain.process(pix, debug);
+	}
+
+	public Pix threshold(Pix pix) {
+		Timer timer = Timer.start(MetricsRegistry.THRESHOLD);
+		Pix temp = Thresholder.edgeAdaptiveThreshold(pix);
+		return replace(timer, pix, temp, "EdgeAdaptiveThreshold");
+	}
+
+	public Pix enhance(Pix pix) {
+		Timer timer = Timer.start(MetricsRegistry.ENHANCE);
+		Pix temp = Enhance.unsharpMasking(pix, 2, (float) 0.5);
+		return replace(timer, pix, temp, "Enhance");
+	}
+
+	public Pix binarize(Pix pix) {
+		Timer timer = Timer.start(MetricsRegistry.BINARIZE);
+		Pix temp = Binarize.otsuAdaptiveThreshold(pix);
+		return replace(timer, pix, temp, "Binarize");
+	}
+
+	public Pix adaptiveMap(Pix pix) {
+		Timer timer = Timer.start(MetricsRegistry.ADAPTIVE_MAP);
+		Pix temp = AdaptiveMap.backgroundNormMorph(pix);
+		return replace(timer, pix, temp, "AdaptiveMap");
+	}
+
+	public Pix convertTo8(Pix pix) {
+		if(pix.getDepth() == 8){
+			return pix;
+		}
+		Timer timer = Timer.start(MetricsRegistry.CONVERT);
+		Pix temp = Convert.convertTo8(pix);
+		return replace(timer, pix, temp, "Convert");
+	}
+
+	public Pix resize(Pix pix) {
+		int[] dimensions = pix.getDimensions();
+		int area = dimensions[Pix.INDEX_W] * dimensions[Pix.INDEX_H];
+		if (area > maxImageArea) {
+			// Scale applies to both dimensions, so take the root of the area ratio
+			float scale = (float) Math.sqrt(maxImageArea / (double) area);
+			Log.i(TAG, "Scaling input image to a factor of " + scale);
+			Timer timer = Timer.start(MetricsRegistry.RESIZE);
+			Pix temp = Scale.scale(pix, scale);
+			return replace(timer, pix, temp, "Scale");
+		}
+		return pix;
+	}
+
+	/**
+	 * Finish a step: record its time, recycle its input
+	 * and dump its output.
+	 */
+	private Pix replace(Timer timer, Pix pix, Pix temp, String name) {
+		timer.stop();
+		MetricsRegistry.getDefault().counter(MetricsRegistry.NATIVE_ALLOCATIONS).increment();
+		pix.recycle();
+		dumpDebugImage(name, temp);
+		return temp;
+	}
+
+	private void dumpDebugImage(String name, Pix pix) {
+		if(debug != null){
+			debug.write(name, pix);
+		}
+	}
+}
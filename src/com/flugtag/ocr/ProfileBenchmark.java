@@ -0,0 +1,191 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+
+import android.util.Log;
+
+import com.flugtag.util.Percentiles;
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * Reads the same receipts with several recognition profiles
+ * and reports the latency and confidence of each.
+ *
+ * Every receipt is decoded, preprocessed and detected once,
+ * then recognized with each profile in turn on the same
+ * engines, so only recognition is compared. The engines are
+ * warmed up before anything is timed.
+ */
+public class ProfileBenchmark {
+	private static final String TAG = "ProfileBenchmark";
+
+	private final Preprocessor preprocessor;
+	private final ParallelRecognizer recognizer;
+	private final RecognitionProfile[] profiles;
+
+	/**
+	 * Benchmark the built in profiles on the shared recognizer.
+	 */
+	public ProfileBenchmark() {
+		this(new Preprocessor(), ParallelRecognizer.getInstance(), RecognitionProfile.getProfiles());
+	}
+
+	/**
+	 * @param preprocessor Prepares decoded images for detection
+	 * @param recognizer Recognizes the detected text areas
+	 * @param profiles The profiles to compare
+	 */
+	public ProfileBenchmark(Preprocessor preprocessor, ParallelRecognizer recognizer,
+			RecognitionProfile[] profiles) {
+		this.preprocessor = preprocessor;
+		this.recognizer = recognizer;
+		this.profiles = profiles;
+	}
+
+	/**
+	 * Read every image with every profile.
+	 *
+	 * @param images The encoded receipt images
+	 * @return One result per profile, in the order of the profiles
+	 */
+	public Result[] run(File[] images) {
+		TextSlicer slicer = new TextSlicer(false);
+		try {
+			return run(images, slicer);
+		} finally {
+			slicer.release();
+		}
+	}
+
+	private Result[] run(File[] images, TextSlicer slicer) {
+		long[][] latencies = new long[profiles.length][images.length];
+		long[] confidenceSums = new long[profiles.length];
+		int count = 0;
+
+		boolean warm = false;
+
+		for(File image : images){
+			TextRegions regions;
+			try {
+				regions = detect(slicer, image);
+			} catch (IOException e) {
+				Log.w(TAG, "Skipping " + image, e);
+				continue;
+			}
+
+			try {
+				if(!warm){
+					recognizer.recognize(regions, null, profiles[0]);
+					warm = true;
+				}
+
+				for(int p=0;p<profiles.length;p++){
+					long startMillis = System.currentTimeMillis();
+					RecognitionResult result = recognizer.recognize(regions, null, profiles[p]);
+					latencies[p][count] = System.currentTimeMillis() - startMillis;
+					confidenceSums[p] += result.getMeanConfidence();
+				}
+				count++;
+			} finally {
+				regions.recycle();
+			}
+		}
+
+		Result[] results = new Result[profiles.length];
+		for(int p=0;p<profiles.length;p++){
+			results[p] = new Result(profiles[p], latencies[p], count, confidenceSums[p]);
+			Log.i(TAG, results[p].toString());
+		}
+		return results;
+	}
+
+	private TextRegions detect(TextSlicer slicer, File image) throws IOException {
+		Pix pix = ImageDecoder.decodeGray(image, preprocessor.getMaxImageArea());
+		if(pix == null){
+			throw new IOException("Could not decode " + image);
+		}
+		pix = preprocessor.process(pix);
+		return slicer.detect(pix);
+	}
+
+	/**
+	 * The latency and confidence of one profile.
+	 */
+	public static class Result {
+		private final RecognitionProfile profile;
+		private final int receipts;
+		private final long meanMillis;
+		private final long p50;
+		private final long p95;
+		private final int meanConfidence;
+
+		/**
+		 * @param profile The profile the receipts were read with
+		 * @param latencies The recognition time of each receipt in milliseconds, sorted in place
+		 * @param count The number of latencies
+		 * @param confidenceSum The sum of the mean confidence of each receipt
+		 */
+		Result(RecognitionProfile profile, long[] latencies, int count, long confidenceSum) {
+			this.profile = profile;
+			this.receipts = count;
+
+			long sum = 0;
+			for(int i=0;i<count;i++){
+				sum += latencies[i];
+			}
+			this.meanMillis = count > 0 ? sum / count : 0;
+			this.p50 = Percentiles.percentile(latencies, count, 50);
+			this.p95 = Percentiles.sortedPercentile(latencies, count, 95);
+			this.meanConfidence = count > 0 ? (int) (confidenceSum / count) : 0;
+		}
+
+		/**
+		 * @return the profile the receipts were read with
+		 */
+		public RecognitionProfile getProfile() {
+			return profile;
+		}
+
+		/**
+		 * @return the mean recognition time of a receipt in milliseconds
+		 */
+		public long getMeanMillis() {
+			return meanMillis;
+		}
+
+		/**
+		 * @return the median recognition time of a receipt in milliseconds
+		 */
+		public long getP50Millis() {
+			return p50;
+		}
+
+		/**
+		 * @return the 95th percentile recognition time of a receipt in milliseconds
+		 */
+		public long getP95Millis() {
+			return p95;
+		}
+
+		/**
+		 * @return the mean confidence of the receipts, 0 - 100
+		 */
+		public int getMeanConfidence() {
+			return meanConfidence;
+		}
+
+		@Override
+		public String toString() {
+			return MessageFormat.format(
+					"{0}: {1} receipts, mean {2} ms, p50={3} ms p95={4} ms, confidence {5}",
+					profile.getName(),
+					receipts,
+					meanMillis,
+					p50,
+					p95,
+					meanConfidence);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.flugtag.ocr;
+
+import android.graphics.Rect;
+
+/**
+ * Picks the recognition profile of each line.
+ *
+ * Called on the worker threads, so implementations
+ * must be safe to call from several threads at once.
+ */
+public interface ProfileSelector {
+	/**
+	 * @param index The position of the line in the sorted text areas
+	 * @param box The bounds of the line on the page, may be null
+	 * @return The profile to read the line with
+	 */
+	public RecognitionProfile select(int index, Rect box);
+
+	/**
+	 * Describe how profiles are picked, it is part of the result
+	 * cache key. Selectors picking differently must differ here.
+	 *
+	 * @return The signature of the selector
+	 */
+	public String getSignature();
+}
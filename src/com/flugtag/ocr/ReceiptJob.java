@@ -0,0 +1,96 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * A single receipt travelling through an OcrPipeline.
+ *
+ * The job carries the native image of whichever stage it
+ * is waiting for, so only one of pix and regions is set at a time.
+ */
+public class ReceiptJob {
+	private final File file;
+
+	Pix pix;
+	TextRegions regions;
+
+	private RecognitionResult result;
+	private Throwable error;
+
+	private long submitMillis;
+	private long completeMillis;
+
+	/**
+	 * @param file The encoded receipt image
+	 */
+	public ReceiptJob(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the encoded receipt image
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the recognized text, null if the job failed
+	 */
+	public RecognitionResult getResult() {
+		return result;
+	}
+
+	void setResult(RecognitionResult result) {
+		this.result = result;
+	}
+
+	/**
+	 * @return the reason the job failed, null if it succeeded
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	void setError(Throwable error) {
+		this.error = error;
+	}
+
+	/**
+	 * @return true if the receipt was recognized
+	 */
+	public boolean isSuccessful() {
+		return error == null && result != null;
+	}
+
+	void setSubmitMillis(long submitMillis) {
+		this.submitMillis = submitMillis;
+	}
+
+	void setCompleteMillis(long completeMillis) {
+		this.completeMillis = completeMillis;
+	}
+
+	/**
+	 * @return milliseconds from submission until the job completed
+	 */
+	public long getLatencyMillis() {
+		return completeMillis - submitMillis;
+	}
+
+	/**
+	 * Free whatever native image the job still holds.
+	 */
+	void recycle() {
+		if(pix != null){
+			pix.recycle();
+			pix = null;
+		}
+		if(regions != null){
+			regions.recycle();
+			regions = null;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package com.flugtag.ocr;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+
+import android.util.Log;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.metrics.Timer;
+import com.googlecode.leptonica.android.NativeMemory;
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * Reads the text of one receipt image, from decode through
+ * preprocessing and detection to recognition. This is the
+ * pipeline of OCRTask without the UI, so it can also be driven
+ * by the regression harness. The native stages run on an
+ * OcrEngine, the harness can stand in for them.
+ *
+ * Results are cached by image and pipeline signature when a
+ * ResultCache is provided.
+ */
+public class ReceiptReader {
+	private static final String TAG = "ReceiptReader";
+
+	private final OcrEngine engine;
+	private final Preprocessor preprocessor;
+	private final ResultCache cache;
+	private ProfileSelector profileSelector;
+	private boolean splitColumns;
+
+	/**
+	 * Read on the native stages.
+	 *
+	 * @param preprocessor Prepares the decoded image
+	 * @param cache Holds the text of receipts already read, may be null
+	 */
+	public ReceiptReader(Preprocessor preprocessor, ResultCache cache) {
+		this.engine = new NativeEngine(preprocessor);
+		this.preprocessor = preprocessor;
+		this.cache = cache;
+	}
+
+	/**
+	 * Read on any engine. Camera frames can't be read, they
+	 * need a Preprocessor.
+	 *
+	 * @param engine Runs the native stages
+	 * @param cache Holds the text of receipts already read, null
+	 *        unless the engine's pages have a Pix
+	 */
+	public ReceiptReader(OcrEngine engine, ResultCache cache) {
+		this.engine = engine;
+		this.preprocessor = null;
+		this.cache = cache;
+	}
+
+	/**
+	 * @param debug Where to write intermediate images, may be null
+	 */
+	public void setDebugImageWriter(DebugImageWriter debug) {
+		engine.setDebugImageWriter(debug);
+	}
+
+	/**
+	 * @param selector Picks the profile of each line, null for the recognizer's own
+	 */
+	public void setProfileSelector(ProfileSelector selector) {
+		this.profileSelector = selector;
+	}
+
+	/**
+	 * @param splitColumns True to read the item and price columns with their own profiles
+	 */
+	public void setSplitColumns(boolean splitColumns) {
+		this.splitColumns = splitColumns;
+	}
+
+	/**
+	 * Read a receipt.
+	 *
+	 * The cache only keeps the text, so on a cache hit the whole
+	 * text is returned at once and the listener is not called.
+	 *
+	 * @param source The encoded receipt image
+	 * @param listener Receives each line as it is read, not called on a cache hit, may be null
+	 * @return The text of the receipt or null if the image could not be decoded
+	 * @throws IOException if the image could not be read
+	 */
+	public String read(ImageDecoder.Source source, LineListener listener) throws IOException {
+		long startMillis = System.currentTimeMillis();
+		Timer timer = Timer.start(MetricsRegistry.TOTAL);
+		NativeMemory.Watermark watermark = NativeMemory.startWatermark();
+		try {
+			TextRegions decoded = engine.decode(source);
+			if(decoded == null){
+				return null;
+			}
+
+			// The same photo read by the same pipeline gives the same text
+			String key = null;
+			if(cache != null){
+				key = ResultCache.key(decoded.getPage(), getSignature());
+				String cached = cache.get(key);
+				if(cached != null){
+					decoded.recycle();
+					timer.stop();
+					Log.i(TAG,
+							MessageFormat.format(
+									"OCR: cache hit in {0} milliseconds",
+									System.currentTimeMillis() - startMillis));
+					return cached;
+				}
+			}
+
+			RecognitionResult result = recognize(engine.detect(decoded), listener);
+			if(cache != null){
+				cache.put(key, result.getText());
+			}
+
+			timer.stop();
+			recordPeak(watermark);
+			Log.i(TAG,
+					MessageFormat.format(
+							"OCR: {0} milliseconds with {1} confidence",
+							System.currentTimeMillis() - startMillis,
+							result.getMeanConfidence()));
+
+			return result.getText();
+		} finally {
+			watermark.stop();
+		}
+	}
+
+	/**
+	 * Read a camera frame, detecting its text areas only when
+	 * the tracker can't follow them from an earlier frame.
+	 * The result cache is not used.
+	 *
+	 * @param pix The 8bpp frame, recycled or handed back to the PixPool
+	 * @param listener Receives each line as it is read, may be null
+	 * @param tracker Follows the text areas across frames
+	 * @param frame The frame as returned by tracker.track()
+	 * @return The recognized lines
+	 */
+	public RecognitionResult recognize(Pix pix, LineListener listener,
+			TextRegionTracker tracker, TextRegionTracker.Frame frame) {
+		if(preprocessor == null){
+			PixPool.getDefault().recycle(pix);
+			throw new IllegalStateException("Camera frames need a Preprocessor");
+		}
+		pix = preprocessor.process(pix);
+
+		RecognitionResult result = recognize(tracker.detect(pix, frame), listener);
+		tracker.recognized(frame, result.getMeanConfidence());
+		return result;
+	}
+
+	/**
+	 * Recognize the text areas and free their page.
+	 */
+	private RecognitionResult recognize(TextRegions regions, LineListener listener) {
+		try {
+			if(splitColumns){
+				return createColumnRecognizer().recognize(regions, listener);
+			}else{
+				return createRecognizer().recognize(regions, listener, getSelector());
+			}
+		} finally {
+			regions.recycle();
+		}
+	}
+
+	/**
+	 * Describe everything that changes the text read from an image.
+	 */
+	private String getSignature() {
+		String signature = engine.getSignature() + ";";
+		if(splitColumns){
+			return signature + createColumnRecognizer().getSignature();
+		}
+		return signature + createRecognizer().getSignature() + ";" + getSelector().getSignature();
+	}
+
+	/**
+	 * Weak lines are read again from differently preprocessed pages.
+	 */
+	private AdaptiveRecognizer createRecognizer() {
+		return new AdaptiveRecognizer(engine, new AdaptiveRecognizer.Parameters());
+	}
+
+	private ColumnRecognizer createColumnRecognizer() {
+		return new ColumnRecognizer(engine);
+	}
+
+	private ProfileSelector getSelector() {
+		return profileSelector != null ? profileSelector : engine.getProfile();
+	}
+
+	/**
+	 * Record the most native image memory held while reading,
+	 * to size MAX_IMAGE_AREA and the worker counts. Reads
+	 * running at the same time each keep their own mark.
+	 */
+	private static void recordPeak(NativeMemory.Watermark watermark) {
+		long peakKb = watermark.getPeakBytes() / 1024;
+		MetricsRegistry.getDefault().histogram(MetricsRegistry.NATIVE_PEAK, "KB").record(peakKb);
+		Log.i(TAG, "Read peak " + peakKb + " KB from " + watermark.getStartBytes() / 1024
+				+ " KB; " + NativeMemory.summary());
+	}
+}
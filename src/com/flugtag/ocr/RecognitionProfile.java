@@ -0,0 +1,147 @@
+package com.flugtag.ocr;
+
+import android.graphics.Rect;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+/**
+ * A named set of engine settings for reading receipts.
+ *
+ * A profile sets every variable it covers each time it is
+ * applied, so an engine can go from one profile to another
+ * without being initialized again. Empty lists clear the
+ * whitelist and blacklist.
+ *
+ * As a ProfileSelector a profile picks itself for every line.
+ */
+public class RecognitionProfile implements ProfileSelector {
+
+	/** The fastest search, one line at a time, with no character lists. */
+	public static final RecognitionProfile RECEIPT_FAST = new RecognitionProfile(
+			"receipt-fast",
+			TessBaseAPI.PSM_SINGLE_LINE,
+			"",
+			"",
+			TessBaseAPI.AVS_FASTEST);
+
+	/** The slowest and most accurate search, without the characters receipts never use. */
+	public static final RecognitionProfile RECEIPT_ACCURATE = new RecognitionProfile(
+			"receipt-accurate",
+			TessBaseAPI.PSM_SINGLE_LINE,
+			"",
+			"|~`{}[]<>\\^_",
+			TessBaseAPI.AVS_MOST_ACCURATE);
+
+	/** Prices, totals and dates. */
+	public static final RecognitionProfile DIGITS_ONLY = new RecognitionProfile(
+			"digits-only",
+			TessBaseAPI.PSM_SINGLE_LINE,
+			"0123456789.,-/$",
+			"",
+			TessBaseAPI.AVS_FASTEST);
+
+	/** A single price in the price column of a receipt. */
+	public static final RecognitionProfile PRICE = new RecognitionProfile(
+			"price",
+			TessBaseAPI.PSM_SINGLE_WORD,
+			"0123456789.,-$",
+			"",
+			TessBaseAPI.AVS_FASTEST);
+
+	private static final RecognitionProfile[] PROFILES = {
+		RECEIPT_FAST, RECEIPT_ACCURATE, DIGITS_ONLY, PRICE
+	};
+
+	private final String name;
+	private final int pageSegMode;
+	private final String whitelist;
+	private final String blacklist;
+	private final int accuracyVsSpeed;
+
+	/**
+	 * @param name A short name for logs and signatures
+	 * @param pageSegMode The TessBaseAPI.PSM_* mode
+	 * @param whitelist The only characters to recognize, empty for all
+	 * @param blacklist The characters never to recognize, empty for none
+	 * @param accuracyVsSpeed From TessBaseAPI.AVS_FASTEST to AVS_MOST_ACCURATE
+	 */
+	public RecognitionProfile(String name, int pageSegMode, String whitelist,
+			String blacklist, int accuracyVsSpeed) {
+		this.name = name;
+		this.pageSegMode = pageSegMode;
+		this.whitelist = whitelist;
+		this.blacklist = blacklist;
+		this.accuracyVsSpeed = accuracyVsSpeed;
+	}
+
+	/**
+	 * Find one of the built in profiles.
+	 *
+	 * @param name The name of the profile
+	 * @return The profile or null if there is none by that name
+	 */
+	public static RecognitionProfile forName(String name) {
+		for(RecognitionProfile profile : PROFILES){
+			if(profile.name.equals(name)){
+				return profile;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the built in profiles
+	 */
+	public static RecognitionProfile[] getProfiles() {
+		return PROFILES.clone();
+	}
+
+	/**
+	 * Set up an initialized engine to read with this profile.
+	 *
+	 * @param engine The engine to configure
+	 */
+	public void apply(TessBaseAPI engine) {
+		engine.setPageSegMode(pageSegMode);
+		engine.setVariable(TessBaseAPI.VAR_CHAR_WHITELIST, whitelist);
+		engine.setVariable(TessBaseAPI.VAR_CHAR_BLACKLIST, blacklist);
+		engine.setVariable(TessBaseAPI.VAR_ACCURACYVSPEED, Integer.toString(accuracyVsSpeed));
+	}
+
+	@Override
+	public RecognitionProfile select(int index, Rect box) {
+		return this;
+	}
+
+	/**
+	 * @return the name of the profile
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the TessBaseAPI.PSM_* mode
+	 */
+	public int getPageSegMode() {
+		return pageSegMode;
+	}
+
+	/**
+	 * Describe every setting of the profile.
+	 *
+	 * @return The signature of the profile
+	 */
+	@Override
+	public String getSignature() {
+		return name + "(psm=" + pageSegMode
+				+ ",white=" + whitelist
+				+ ",black=" + blacklist
+				+ ",avs=" + accuracyVsSpeed + ")";
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
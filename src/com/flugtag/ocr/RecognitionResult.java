@@ -0,0 +1,58 @@
+package com.flugtag.ocr;
+
+/**
+ * The recognized lines of a receipt, in reading order.
+ */
+public class RecognitionResult {
+	private final LineResult[] lines;
+
+	/**
+	 * @param lines The recognized lines, in reading order
+	 */
+	public RecognitionResult(LineResult[] lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * @return the recognized lines, in reading order
+	 */
+	public LineResult[] getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the number of recognized lines
+	 */
+	public int size() {
+		return lines.length;
+	}
+
+	/**
+	 * The mean of the line confidences. Summed before dividing
+	 * so that the result does not depend on line order.
+	 * 
+	 * @return the mean confidence of all lines, 0 if there are none
+	 */
+	public int getMeanConfidence() {
+		if(lines.length == 0){
+			return 0;
+		}
+
+		long sum = 0;
+		for(LineResult line : lines){
+			sum += line.getConfidence();
+		}
+		return (int) (sum / lines.length);
+	}
+
+	/**
+	 * @return the text of every line, one per row
+	 */
+	public String getText() {
+		StringBuilder sb = new StringBuilder();
+		for(LineResult line : lines){
+			sb.append(line.getText()).append("\n");
+		}
+		return sb.toString();
+	}
+}
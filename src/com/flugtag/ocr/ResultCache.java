@@ -0,0 +1,269 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * A disk cache of recognized receipt text.
+ *
+ * Entries are keyed by a hash of the decoded image pixels and
+ * the parameters of the pipeline, so picking the same photo
+ * again returns its text without running OCR, while a change
+ * to the pipeline never returns stale text. The least recently
+ * used entries are deleted once the cache grows past its size.
+ */
+public class ResultCache {
+	private static final String TAG = "ResultCache";
+
+	/** The name of the cache folder inside the app cache dir. */
+	public static final String DIR_NAME = "ocr-results";
+
+	/** Text results are small, this holds a few thousand receipts. */
+	public static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+	private static final String EXTENSION = ".txt";
+
+	private static ResultCache instance;
+
+	private final File dir;
+	private final long maxBytes;
+
+	/** Entry sizes in least recently used order, loaded on first use. */
+	private LinkedHashMap<String, Long> entries;
+	private long totalBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param dir The folder to keep entries in
+	 * @param maxBytes The size the cache is trimmed to
+	 */
+	public ResultCache(File dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Get the application wide cache, kept in the app cache dir.
+	 *
+	 * @param ctx Any context of the application
+	 * @return The shared ResultCache
+	 */
+	public static synchronized ResultCache getInstance(Context ctx) {
+		if(instance == null){
+			File dir = new File(ctx.getCacheDir(), DIR_NAME);
+			instance = new ResultCache(dir, DEFAULT_MAX_BYTES);
+		}
+		return instance;
+	}
+
+	/**
+	 * Compute the key of a decoded image.
+	 *
+	 * @param pix The decoded image, before any preprocessing
+	 * @param signature Every pipeline parameter that affects the result
+	 * @return A hex key for get() and put()
+	 */
+	public static String key(Pix pix, String signature) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+
+		int[] dimensions = pix.getDimensions();
+		digest.update(signature.getBytes());
+		digest.update(("|" + dimensions[Pix.INDEX_W]
+				+ "x" + dimensions[Pix.INDEX_H]
+				+ "x" + dimensions[Pix.INDEX_D] + "|").getBytes());
+		digest.update(pix.getData());
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Look up a result.
+	 *
+	 * @param key A key from key()
+	 * @return The cached text or null
+	 */
+	public synchronized String get(String key) {
+		load();
+
+		if(!entries.containsKey(key)){
+			misses.incrementAndGet();
+			return null;
+		}
+
+		File file = file(key);
+		try {
+			String text = read(file);
+			// Only moves the entry to the end of the LinkedHashMap access order
+			entries.get(key);
+			file.setLastModified(System.currentTimeMillis());
+			hits.incrementAndGet();
+			return text;
+		} catch (IOException e) {
+			Log.w(TAG, "Dropping unreadable entry " + key, e);
+			remove(key);
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Store a result, trimming old entries if the cache is full.
+	 *
+	 * @param key A key from key()
+	 * @param text The recognized text
+	 */
+	public synchronized void put(String key, String text) {
+		load();
+
+		File file = file(key);
+		try {
+			write(file, text);
+		} catch (IOException e) {
+			Log.w(TAG, "Failed to cache " + key, e);
+			file.delete();
+			return;
+		}
+
+		Long old = entries.remove(key);
+		if(old != null){
+			totalBytes -= old;
+		}
+		entries.put(key, file.length());
+		totalBytes += file.length();
+
+		trim();
+	}
+
+	/**
+	 * @return the number of lookups that found a result
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of lookups that found nothing
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private void trim() {
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while(totalBytes > maxBytes && it.hasNext()){
+			Map.Entry<String, Long> eldest = it.next();
+			it.remove();
+			totalBytes -= eldest.getValue();
+			file(eldest.getKey()).delete();
+		}
+	}
+
+	private void remove(String key) {
+		Long size = entries.remove(key);
+		if(size != null){
+			totalBytes -= size;
+		}
+		file(key).delete();
+	}
+
+	/**
+	 * Index the entries on disk, oldest first, the first time
+	 * the cache is used.
+	 */
+	private void load() {
+		if(entries != null){
+			return;
+		}
+		entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		totalBytes = 0;
+
+		if(!dir.exists()){
+			dir.mkdirs();
+			return;
+		}
+
+		File[] files = dir.listFiles();
+		if(files == null){
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				long delta = a.lastModified() - b.lastModified();
+				return delta < 0 ? -1 : (delta > 0 ? 1 : 0);
+			}
+		});
+		for(File file : files){
+			String name = file.getName();
+			if(name.endsWith(EXTENSION)){
+				entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+				totalBytes += file.length();
+			}
+		}
+		trim();
+	}
+
+	private File file(String key) {
+		return new File(dir, key + EXTENSION);
+	}
+
+	private static String read(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while(offset < data.length){
+				int count = in.read(data, offset, data.length - offset);
+				if(count < 0){
+					throw new IOException("Unexpected end of " + file);
+				}
+				offset += count;
+			}
+		} finally {
+			in.close();
+		}
+		return new String(data, "UTF-8");
+	}
+
+	private static void write(File file, String text) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] digits = "0123456789abcdef".toCharArray();
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes){
+			sb.append(digits[(b >> 4) & 0xf]).append(digits[b & 0xf]);
+		}
+		return sb.toString();
+	}
+}
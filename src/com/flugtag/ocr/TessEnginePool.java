@@ -0,0 +1,264 @@
+package com.flugtag.ocr;
+
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+import com.flugtag.util.Paths;
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+/**
+ * A pool of initialized TessBaseAPI engines.
+ *
+ * Initializing an engine loads the language data from disk,
+ * which is far more expensive than recognizing a receipt line.
+ * The pool keeps initialized engines alive between tasks so
+ * that only the first scan pays that cost.
+ *
+ * An acquired engine belongs to the acquiring thread until it
+ * is handed back with release(). Engines are not thread-safe
+ * and must never be shared between threads.
+ */
+public class TessEnginePool {
+	private static final String TAG = "TessEnginePool";
+
+	/** The number of idle engines kept by default. */
+	public static final int DEFAULT_MAX_IDLE = 2;
+
+	/** Idle engines are released after this many milliseconds. */
+	public static final long DEFAULT_IDLE_TIMEOUT = 2 * 60 * 1000;
+
+	private static TessEnginePool instance;
+
+	private final String dataPath;
+	private final String language;
+
+	private int maxIdle;
+	private long idleTimeout;
+
+	/** Idle engines, most recently released first. */
+	private final LinkedList<IdleEngine> idle = new LinkedList<IdleEngine>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong initMillis = new AtomicLong();
+
+	/**
+	 * Construct a pool of engines for the provided language.
+	 *
+	 * @param dataPath The parent directory of tessdata
+	 * @param language The language to initialize engines with
+	 */
+	public TessEnginePool(String dataPath, String language){
+		this.dataPath = dataPath;
+		this.language = language;
+		this.maxIdle = DEFAULT_MAX_IDLE;
+		this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	}
+
+	/**
+	 * Get the application wide pool of English engines.
+	 *
+	 * @return The shared TessEnginePool
+	 */
+	public static synchronized TessEnginePool getInstance(){
+		if(instance == null){
+			instance = new TessEnginePool(Paths.OCR_DATA, "eng");
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the language engines are initialized with
+	 */
+	public String getLanguage(){
+		return language;
+	}
+
+	/**
+	 * Take an engine from the pool, initializing a new
+	 * one if none are idle.
+	 *
+	 * @return An initialized engine owned by the calling thread
+	 */
+	public TessBaseAPI acquire(){
+		trimIdle();
+
+		synchronized(idle){
+			if(!idle.isEmpty()){
+				hits.incrementAndGet();
+				return idle.removeFirst().engine;
+			}
+		}
+
+		misses.incrementAndGet();
+		long startMillis = System.currentTimeMillis();
+
+		TessBaseAPI engine = new TessBaseAPI();
+		if(!engine.init(dataPath, language)){
+			engine.end();
+			throw new IllegalStateException("Failed to initialize Tesseract for " + language);
+		}
+
+		long deltaMillis = System.currentTimeMillis() - startMillis;
+		initMillis.addAndGet(deltaMillis);
+		Log.i(TAG, "Initialized engine in " + deltaMillis + " milliseconds");
+
+		return engine;
+	}
+
+	/**
+	 * Return an engine to the pool. Recognition results and
+	 * image data are cleared, the language data is kept.
+	 *
+	 * @param engine An engine obtained from acquire()
+	 */
+	public void release(TessBaseAPI engine){
+		if(engine == null){
+			return;
+		}
+		engine.clear();
+
+		synchronized(idle){
+			if(idle.size() < maxIdle){
+				idle.addFirst(new IdleEngine(engine, System.currentTimeMillis()));
+				return;
+			}
+		}
+
+		evictions.incrementAndGet();
+		engine.end();
+	}
+
+	/**
+	 * Release the engines that have been idle longer
+	 * than the idle timeout.
+	 */
+	public void trimIdle(){
+		long cutoff = System.currentTimeMillis() - idleTimeout;
+		LinkedList<IdleEngine> expired = new LinkedList<IdleEngine>();
+
+		synchronized(idle){
+			Iterator<IdleEngine> it = idle.iterator();
+			while(it.hasNext()){
+				IdleEngine entry = it.next();
+				if(entry.releasedMillis < cutoff){
+					it.remove();
+					expired.add(entry);
+				}
+			}
+		}
+
+		end(expired);
+	}
+
+	/**
+	 * Release every idle engine. Call this when the
+	 * system is low on memory.
+	 */
+	public void evictAll(){
+		LinkedList<IdleEngine> evicted;
+		synchronized(idle){
+			evicted = new LinkedList<IdleEngine>(idle);
+			idle.clear();
+		}
+
+		end(evicted);
+	}
+
+	private void end(LinkedList<IdleEngine> entries){
+		for(IdleEngine entry : entries){
+			evictions.incrementAndGet();
+			entry.engine.end();
+		}
+	}
+
+	/**
+	 * @param maxIdle The number of idle engines to keep
+	 */
+	public void setMaxIdle(int maxIdle){
+		if(maxIdle < 0){
+			throw new IllegalArgumentException("Max idle engines must be >= 0");
+		}
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * @return the number of idle engines kept
+	 */
+	public int getMaxIdle(){
+		return maxIdle;
+	}
+
+	/**
+	 * @param idleTimeout Milliseconds an engine may sit idle before it is released
+	 */
+	public void setIdleTimeout(long idleTimeout){
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * @return the number of engines currently idle
+	 */
+	public int getIdleCount(){
+		synchronized(idle){
+			return idle.size();
+		}
+	}
+
+	/**
+	 * @return the number of acquires served by an idle engine
+	 */
+	public long getHitCount(){
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of acquires that initialized a new engine
+	 */
+	public long getMissCount(){
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of engines ended by the pool
+	 */
+	public long getEvictionCount(){
+		return evictions.get();
+	}
+
+	/**
+	 * @return the total milliseconds spent initializing engines
+	 */
+	public long getInitMillis(){
+		return initMillis.get();
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format(
+				"TessEnginePool[hits={0}, misses={1}, evictions={2}, idle={3}, initMillis={4}]",
+				getHitCount(),
+				getMissCount(),
+				getEvictionCount(),
+				getIdleCount(),
+				getInitMillis());
+	}
+
+	/**
+	 * An engine waiting in the pool and when it was released.
+	 */
+	private static class IdleEngine {
+		final TessBaseAPI engine;
+		final long releasedMillis;
+
+		IdleEngine(TessBaseAPI engine, long releasedMillis){
+			this.engine = engine;
+			this.releasedMillis = releasedMillis;
+		}
+	}
+}
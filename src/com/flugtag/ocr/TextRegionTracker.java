@@ -0,0 +1,353 @@
+package com.flugtag.ocr;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.googlecode.eyesfree.opticflow.OpticalFlow;
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.Rotate;
+
+/**
+ * Follows the text areas of a receipt across camera frames, so
+ * the text detector only runs on keyframes.
+ *
+ * Every preview frame is handed to the optical flow with
+ * addFrame(). The text areas found on a keyframe become interest
+ * regions of the flow, and on later frames each box is moved by
+ * the flow accumulated at its center since the keyframe. A new
+ * keyframe is detected every few reads, and as soon as tracking
+ * looks unreliable: the boxes move apart, move too far, leave
+ * the frame, or read with much less confidence than on the
+ * keyframe.
+ *
+ * Tracked boxes are laid on the page rotated by the skew of the
+ * keyframe. The flow itself works on the unrotated frames, which
+ * is close enough for the few degrees of a hand held receipt.
+ *
+ * addFrame() and track() are called from the camera callback
+ * thread, detect() and recognized() from the thread reading the
+ * frame.
+ */
+public class TextRegionTracker {
+	private static final String TAG = "TextRegionTracker";
+
+	public static class Parameters {
+		/** The most frames read from tracked boxes between keyframes. */
+		public int keyframeInterval;
+
+		/** How much the flow downsamples frames. */
+		public int downsample;
+
+		/** The grid of flow features laid on each box, across and down. */
+		public int featuresX;
+		public int featuresY;
+
+		/** Boxes whose shifts spread further apart, in frame pixels, are lost. */
+		public float maxSpread;
+
+		/** Boxes that moved further than this share of the frame width are lost. */
+		public float maxShift;
+
+		/** The share of each box that must stay in the frame. */
+		public float minVisible;
+
+		/** Tracking is lost when confidence drops this far below the keyframe's. */
+		public int maxConfidenceDrop;
+
+		public Parameters() {
+			keyframeInterval = 5;
+			downsample = 4;
+			featuresX = 4;
+			featuresY = 2;
+			maxSpread = 8;
+			maxShift = 0.25f;
+			minVisible = 0.8f;
+			maxConfidenceDrop = 15;
+		}
+	}
+
+	/**
+	 * What the tracker knows of the frame about to be read.
+	 */
+	public static class Frame {
+		final long timestamp;
+		final int width;
+		/** The tracked boxes in frame pixels, null on a keyframe. */
+		final Rect[] boxes;
+		final float scale;
+		final float angle;
+
+		Frame(long timestamp, int width, Rect[] boxes, float scale, float angle) {
+			this.timestamp = timestamp;
+			this.width = width;
+			this.boxes = boxes;
+			this.scale = scale;
+			this.angle = angle;
+		}
+
+		/**
+		 * @return true if the text areas of the frame must be detected
+		 */
+		public boolean isKeyframe() {
+			return boxes == null;
+		}
+	}
+
+	private final OpticalFlow flow = new OpticalFlow();
+	private final TextSlicer slicer;
+	private final Parameters params;
+	private boolean released;
+
+	private int width;
+	private int height;
+	private long latest;
+
+	/** The boxes of the keyframe in frame pixels, null to detect again. */
+	private Rect[] keyBoxes;
+	private long keyTimestamp;
+	/** Page pixels per frame pixel on the keyframe. */
+	private float keyScale;
+	private float keyAngle;
+	private int keyConfidence;
+	private int tracked;
+
+	private long keyframeCount;
+	private long trackedCount;
+
+	/**
+	 * @param slicer Detects the text areas of keyframes, owned by the tracker
+	 * @param params The tracking thresholds
+	 */
+	public TextRegionTracker(TextSlicer slicer, Parameters params) {
+		this.slicer = slicer;
+		this.params = params;
+	}
+
+	/**
+	 * Add a preview frame to the optical flow. Every frame must
+	 * be added, read or not, for the flow to follow the receipt.
+	 *
+	 * @param frame The frame in YUV420SP format
+	 * @param width The width of the frame
+	 * @param height The height of the frame
+	 * @param timestamp The time of the frame, increasing
+	 */
+	public synchronized void addFrame(byte[] frame, int width, int height, long timestamp) {
+		if(width != this.width || height != this.height){
+			flow.initialize(width, height, params.downsample);
+			this.width = width;
+			this.height = height;
+			keyBoxes = null;
+		}
+
+		flow.setImage(frame, timestamp);
+		flow.computeOpticalFlow();
+		latest = timestamp;
+	}
+
+	/**
+	 * Forget the keyframe, so the next frame read is detected.
+	 * Call it when the preview restarts, the flow accumulated
+	 * before is of no use to the new frames.
+	 */
+	public synchronized void reset() {
+		keyBoxes = null;
+		tracked = 0;
+		keyConfidence = -1;
+	}
+
+	/**
+	 * Move the keyframe boxes onto the last added frame.
+	 *
+	 * @return The frame to hand to detect() along with its image
+	 */
+	public synchronized Frame track() {
+		if(keyBoxes == null || tracked >= params.keyframeInterval){
+			return keyframe();
+		}
+
+		int count = keyBoxes.length;
+		float[] dx = new float[count];
+		float[] dy = new float[count];
+		float meanX = 0;
+		float meanY = 0;
+		for(int i=0;i<count;i++){
+			Rect box = keyBoxes[i];
+			float radius = Math.max(box.width(), box.height()) / 2f;
+			PointF delta = flow.getAccumulatedDelta(keyTimestamp, box.centerX(), box.centerY(), radius);
+			dx[i] = delta.x;
+			dy[i] = delta.y;
+			meanX += delta.x / count;
+			meanY += delta.y / count;
+		}
+
+		// A receipt is rigid, its lines move together
+		float spread = 0;
+		for(int i=0;i<count;i++){
+			spread = Math.max(spread, (float) Math.hypot(dx[i] - meanX, dy[i] - meanY));
+		}
+		if(spread > params.maxSpread){
+			return lost("boxes spread " + spread + "px apart");
+		}
+		if(Math.hypot(meanX, meanY) > params.maxShift * width){
+			return lost("boxes moved " + Math.round(Math.hypot(meanX, meanY)) + "px");
+		}
+
+		Rect[] boxes = new Rect[count];
+		for(int i=0;i<count;i++){
+			Rect box = new Rect(keyBoxes[i]);
+			box.offset(Math.round(dx[i]), Math.round(dy[i]));
+			int area = box.width() * box.height();
+			if(!box.intersect(0, 0, width, height)
+					|| box.width() * box.height() < params.minVisible * area){
+				return lost("box " + i + " left the frame");
+			}
+			boxes[i] = box;
+		}
+		return new Frame(latest, width, boxes, keyScale, keyAngle);
+	}
+
+	/**
+	 * Get the text areas of a frame, detected on a keyframe and
+	 * tracked otherwise. On tracked frames the page is rotated by
+	 * the skew of the keyframe, which the detector would have done.
+	 *
+	 * @param pix The preprocessed frame, recycled
+	 * @param frame The frame as returned by track()
+	 * @return The page and its text areas
+	 */
+	public TextRegions detect(Pix pix, Frame frame) {
+		if(!frame.isKeyframe()){
+			return follow(pix, frame);
+		}
+
+		TextRegions regions;
+		float angle;
+		synchronized(slicer){
+			if(released){
+				throw new IllegalStateException("Tracker has been released");
+			}
+			regions = slicer.detect(pix);
+			angle = slicer.getSkewAngle();
+		}
+
+		// Keep the boxes in frame pixels, the flow knows no pages
+		float scale = (float) regions.getPage().getWidth() / frame.width;
+		Rect[] boxes = new Rect[regions.size()];
+		for(int i=0;i<boxes.length;i++){
+			boxes[i] = scale(regions.getBox(i), 1 / scale);
+		}
+
+		synchronized(this){
+			keyframeCount++;
+			tracked = 0;
+			keyConfidence = -1;
+			keyTimestamp = frame.timestamp;
+			keyScale = scale;
+			keyAngle = angle;
+			keyBoxes = boxes.length > 0 ? boxes : null;
+			for(Rect box : boxes){
+				flow.addInterestRegion(params.featuresX, params.featuresY,
+						box.left, box.top, box.right, box.bottom);
+			}
+		}
+		MetricsRegistry.getDefault().counter(MetricsRegistry.FRAMES_DETECTED).increment();
+		return regions;
+	}
+
+	/**
+	 * Report how confidently a frame was read. A tracked frame
+	 * read much worse than its keyframe has its boxes in the
+	 * wrong place, so the next frame is detected.
+	 *
+	 * @param frame The frame as returned by track()
+	 * @param confidence The mean confidence of its lines
+	 */
+	public synchronized void recognized(Frame frame, int confidence) {
+		if(frame.isKeyframe()){
+			if(frame.timestamp == keyTimestamp){
+				keyConfidence = confidence;
+			}
+		}else if(keyConfidence >= 0 && confidence < keyConfidence - params.maxConfidenceDrop){
+			Log.i(TAG, "Tracking lost: confidence fell from " + keyConfidence + " to " + confidence);
+			keyBoxes = null;
+		}
+	}
+
+	/**
+	 * Free the text detector. The tracker can't be used afterwards.
+	 */
+	public void release() {
+		synchronized(slicer){
+			if(!released){
+				slicer.release();
+				released = true;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of frames whose text areas were detected
+	 */
+	public synchronized long getKeyframeCount() {
+		return keyframeCount;
+	}
+
+	/**
+	 * @return the number of frames whose text areas were tracked
+	 */
+	public synchronized long getTrackedCount() {
+		return trackedCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TextRegionTracker: detected " + keyframeCount + ", tracked " + trackedCount + " frames";
+	}
+
+	private TextRegions follow(Pix pix, Frame frame) {
+		Pix page = pix;
+		if(frame.angle != 0){
+			page = Rotate.rotate(pix, frame.angle);
+			PixPool pool = PixPool.getDefault();
+			if(page.getNativePix() == pix.getNativePix()){
+				// A clone shares the raster, which must not be refilled
+				pool.forget(pix);
+			}
+			pool.recycle(pix);
+		}
+
+		Rect[] boxes = new Rect[frame.boxes.length];
+		for(int i=0;i<boxes.length;i++){
+			boxes[i] = scale(frame.boxes[i], frame.scale);
+			boxes[i].intersect(0, 0, page.getWidth(), page.getHeight());
+		}
+
+		synchronized(this){
+			trackedCount++;
+			tracked++;
+		}
+		MetricsRegistry.getDefault().counter(MetricsRegistry.FRAMES_TRACKED).increment();
+		return new TextRegions(page, boxes);
+	}
+
+	private Frame keyframe() {
+		return new Frame(latest, width, null, 1, 0);
+	}
+
+	private Frame lost(String reason) {
+		Log.i(TAG, "Tracking lost: " + reason);
+		keyBoxes = null;
+		return keyframe();
+	}
+
+	private static Rect scale(Rect box, float scale) {
+		return new Rect(
+				Math.round(box.left * scale),
+				Math.round(box.top * scale),
+				Math.round(box.right * scale),
+				Math.round(box.bottom * scale));
+	}
+}
@@ -0,0 +1,149 @@
+package com.flugtag.ocr;
+
+import android.graphics.Rect;
+
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * The text areas of a receipt as boxes on the whole page.
+ *
+ * Recognizing a region means pointing an engine at a box of
+ * the page, so the page is handed to Tesseract once rather
+ * than once for every cropped line.
+ *
+ * The page is named after how it was made, so recordings can
+ * tell the preprocessed page from the pages of retry chains.
+ * Pages of an OcrEngine stand-in have no Pix.
+ */
+public class TextRegions {
+	/** The name of a decoded image, before preprocessing. */
+	public static final String DECODED = "decoded";
+
+	/** The name of the page as preprocessed and detected. */
+	public static final String DETECTED = "page";
+
+	private final String pageName;
+	private Pix page;
+	private final int width;
+	private final int height;
+	private final int depth;
+	private final Rect[] boxes;
+
+	/**
+	 * @param page The image the boxes were detected on, owned by this object
+	 * @param boxes The text areas in reading order
+	 */
+	public TextRegions(Pix page, Rect[] boxes) {
+		this(DETECTED, page, boxes);
+	}
+
+	/**
+	 * @param pageName How the page was made
+	 * @param page The image the boxes are on, owned by this object
+	 * @param boxes The text areas in reading order
+	 */
+	public TextRegions(String pageName, Pix page, Rect[] boxes) {
+		this(pageName, page, page.getWidth(), page.getHeight(), page.getDepth(), boxes);
+	}
+
+	/**
+	 * A page without an image, for OcrEngine stand-ins.
+	 *
+	 * @param pageName How the page was made
+	 * @param width The width of the page
+	 * @param height The height of the page
+	 * @param depth The bit depth of the page
+	 * @param boxes The text areas in reading order
+	 */
+	public TextRegions(String pageName, int width, int height, int depth, Rect[] boxes) {
+		this(pageName, null, width, height, depth, boxes);
+	}
+
+	private TextRegions(String pageName, Pix page, int width, int height, int depth, Rect[] boxes) {
+		this.pageName = pageName;
+		this.page = page;
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.boxes = boxes;
+	}
+
+	/**
+	 * Other text areas of the same page. The page is only
+	 * borrowed, recycle these regions and not the new ones.
+	 *
+	 * @param boxes The text areas in reading order
+	 * @return The regions sharing the page
+	 */
+	public TextRegions withBoxes(Rect[] boxes) {
+		return new TextRegions(pageName, page, width, height, depth, boxes);
+	}
+
+	/**
+	 * @return how the page was made, DETECTED or the name of a retry chain
+	 */
+	public String getPageName() {
+		return pageName;
+	}
+
+	/**
+	 * @return the image the boxes were detected on, null on a stand-in page
+	 */
+	public Pix getPage() {
+		return page;
+	}
+
+	/**
+	 * @return the width of the page
+	 */
+	public int getPageWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the page
+	 */
+	public int getPageHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the bit depth of the page
+	 */
+	public int getPageDepth() {
+		return depth;
+	}
+
+	/**
+	 * @param index The index of the text area
+	 * @return the bounds of the text area on the page
+	 */
+	public Rect getBox(int index) {
+		return boxes[index];
+	}
+
+	/**
+	 * @return the text areas in reading order
+	 */
+	public Rect[] getBoxes() {
+		return boxes;
+	}
+
+	/**
+	 * @return the number of text areas
+	 */
+	public int size() {
+		return boxes.length;
+	}
+
+	/**
+	 * Free the page image, or hand it back to the PixPool if
+	 * it came from there.
+	 */
+	public void recycle() {
+		if(page != null){
+			PixPool.getDefault().recycle(page);
+			page = null;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.flugtag.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.metrics.Timer;
+import com.flugtag.util.Paths;
+import com.googlecode.eyesfree.textdetect.HydrogenTextDetector;
+import com.googlecode.leptonica.android.Constants;
+import com.googlecode.leptonica.android.NativeScope;
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.Pixa;
+
+/**
+ * Slices a preprocessed receipt into its text areas.
+ * 
+ * A TextSlicer holds a native text detector and must
+ * only be used by one thread at a time. Call release()
+ * when done with it.
+ */
+public class TextSlicer {
+	private static final String TAG = "TextSlicer";
+
+	private final HydrogenTextDetector htd;
+	private DebugImageWriter debug;
+	private float skewAngle;
+
+	/**
+	 * @param debug True to have the detector write its own debug output
+	 */
+	public TextSlicer(boolean debug) {
+		htd = new HydrogenTextDetector();
+		HydrogenTextDetector.Parameters hydrogenParams = htd.getParameters();
+		hydrogenParams.debug = debug;
+		hydrogenParams.skew_enabled = true;
+		htd.setParameters(hydrogenParams);
+	}
+
+	/**
+	 * Create a slicer with the detector profile in the profile
+	 * file if there is one, so a tuned profile can be used
+	 * without a rebuild.
+	 * 
+	 * @param debug True to have the detector write its own debug output
+	 * @return A new TextSlicer
+	 */
+	public static TextSlicer create(boolean debug) {
+		TextSlicer slicer = new TextSlicer(debug);
+		File file = new File(Paths.DETECTOR_PROFILE);
+		if(file.exists()){
+			try {
+				slicer.setProfile(DetectorProfile.load(file));
+			} catch (IOException e) {
+				Log.w(TAG, "Failed to read " + file, e);
+			} catch (IllegalArgumentException e) {
+				Log.w(TAG, "Invalid detector profile in " + file, e);
+			}
+		}
+		return slicer;
+	}
+
+	/**
+	 * Change the detector parameters named by a profile.
+	 * 
+	 * @param profile Detector parameters, see DetectorProfile
+	 */
+	public void setProfile(Properties profile) {
+		HydrogenTextDetector.Parameters hydrogenParams = htd.getParameters();
+		DetectorProfile.apply(profile, hydrogenParams);
+		htd.setParameters(hydrogenParams);
+	}
+
+	/**
+	 * @return the detector parameters, changes take effect on setProfile()
+	 */
+	public Properties getProfile() {
+		return DetectorProfile.read(htd.getParameters());
+	}
+
+	/**
+	 * @return the signature of the detector parameters
+	 */
+	public String getSignature() {
+		return DetectorProfile.getSignature(htd.getParameters());
+	}
+
+	/**
+	 * Free the native text detector. The slicer can't be
+	 * used afterwards.
+	 */
+	public void release() {
+		htd.release();
+	}
+
+	/**
+	 * @param debug Where to write each detected text area, may be null
+	 */
+	public void setDebugImageWriter(DebugImageWriter debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * Detect the text areas of an image, sorted top to bottom.
+	 * The source Pix is recycled.
+	 * 
+	 * @param pix The preprocessed image
+	 * @return The text areas sorted by L_SORT_BY_Y
+	 */
+	public Pixa slice(Pix pix) {
+		Timer timer = Timer.start(MetricsRegistry.DETECT);
+		Pixa pixa = detectSorted(pix);
+		htd.clear();
+		timer.stop();
+
+		detected(pixa);
+		return pixa;
+	}
+
+	/**
+	 * Detect the text areas of an image, sorted top to bottom,
+	 * as boxes on the page they were found on. The page is
+	 * the source image after deskewing. The source Pix is
+	 * recycled.
+	 * 
+	 * The detector still crops every area natively, but the
+	 * crops are freed here instead of being handed on to
+	 * recognition.
+	 * 
+	 * @param pix The preprocessed image
+	 * @return The page and the text areas sorted by L_SORT_BY_Y
+	 */
+	public TextRegions detect(Pix pix) {
+		Timer timer = Timer.start(MetricsRegistry.DETECT);
+		Pixa pixa = detectSorted(pix);
+		Pix page = htd.getSourceImage();
+		skewAngle = htd.getSkewAngle();
+		htd.clear();
+
+		int[] geometries = pixa.getBoxGeometries();
+		Rect[] boxes = new Rect[geometries.length / 4];
+		for(int i=0;i<boxes.length;i++){
+			boxes[i] = Pixa.toRect(geometries, i);
+		}
+		timer.stop();
+
+		detected(pixa);
+		pixa.recycle();
+		return new TextRegions(page, boxes);
+	}
+
+	/**
+	 * @return the degrees the page of the last detect() was
+	 * rotated by to level it, clockwise is positive
+	 */
+	public float getSkewAngle() {
+		return skewAngle;
+	}
+
+	private Pixa detectSorted(Pix pix) {
+		NativeScope scope = new NativeScope();
+		try {
+			htd.setSourceImage(scope.add(pix));
+			htd.detectText();
+			Pixa unsorted = scope.add(htd.getTextAreas());
+			return unsorted.sort(Constants.L_SORT_BY_Y, Constants.L_SORT_INCREASING);
+		} finally {
+			scope.close();
+		}
+	}
+
+	private void detected(Pixa pixa) {
+		int lines = pixa.size();
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.counter(MetricsRegistry.LINES_DETECTED).add(lines);
+		metrics.histogram(MetricsRegistry.LINES_PER_RECEIPT, "lines").record(lines);
+
+		if(debug != null && debug.wants("part")){
+			for(int i=0;i<lines;i++){
+				Pix part = pixa.getPix(i);
+				debug.write("part" + i, part);
+				part.recycle();
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.flugtag.regress;
+
+/**
+ * Measures how far recognized text is from the expected text,
+ * as the edit distance between them over the expected length.
+ *
+ * Runs of whitespace count as one space and leading and
+ * trailing whitespace is ignored, since line spacing is not
+ * something OCR is asked to get right.
+ */
+public class CharacterErrorRate {
+
+	/**
+	 * @param expected The true text of the receipt
+	 * @param actual The recognized text
+	 * @return the character error rate, 0 for a perfect read. It
+	 *         may exceed 1 when much more text is read than expected.
+	 */
+	public static float measure(String expected, String actual) {
+		String e = normalize(expected);
+		String a = normalize(actual);
+		if(e.length() == 0){
+			return a.length() == 0 ? 0 : 1;
+		}
+		return distance(e, a) / (float) e.length();
+	}
+
+	/**
+	 * @param text Some text
+	 * @return the text with whitespace runs collapsed to one space and trimmed
+	 */
+	public static String normalize(String text) {
+		return text.trim().replaceAll("\\s+", " ");
+	}
+
+	/**
+	 * The Levenshtein distance, keeping two rows of the table.
+	 *
+	 * @return the number of insertions, deletions and substitutions that turn a into b
+	 */
+	public static int distance(String a, String b) {
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for(int j=0;j<=b.length();j++){
+			previous[j] = j;
+		}
+
+		for(int i=1;i<=a.length();i++){
+			current[0] = i;
+			char c = a.charAt(i - 1);
+			for(int j=1;j<=b.length();j++){
+				int substitute = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+				int delete = previous[j] + 1;
+				int insert = current[j - 1] + 1;
+				current[j] = Math.min(substitute, Math.min(delete, insert));
+			}
+			int[] temp = previous;
+			previous = current;
+			current = temp;
+		}
+		return previous[b.length()];
+	}
+
+	/**
+	 * Not instantiable, there are only static methods here.
+	 */
+	private CharacterErrorRate(){}
+}
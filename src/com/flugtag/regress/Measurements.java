@@ -0,0 +1,228 @@
+package com.flugtag.regress;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.flugtag.util.Percentiles;
+
+/**
+ * The accuracy and cost of reading a whole corpus: character
+ * error rate, latency percentiles, mean stage times and native
+ * allocations. A baseline is a saved Measurements.
+ */
+public class Measurements {
+
+	private static final String KEY_RECEIPTS = "receipts";
+	private static final String KEY_CER = "cer.mean";
+	private static final String KEY_P50 = "latency.p50";
+	private static final String KEY_P95 = "latency.p95";
+	private static final String KEY_NATIVE = "native.allocations.mean";
+	private static final String STAGE_PREFIX = "stage.";
+	private static final String RECEIPT_PREFIX = "cer.receipt.";
+
+	private final int receipts;
+	private final float meanCer;
+	private final long p50Millis;
+	private final long p95Millis;
+	private final float meanNativeAllocations;
+	private final Map<String, Long> stageMeanMicros;
+	private final Map<String, Float> receiptCer;
+
+	Measurements(int receipts, float meanCer, long p50Millis, long p95Millis,
+			float meanNativeAllocations, Map<String, Long> stageMeanMicros,
+			Map<String, Float> receiptCer) {
+		this.receipts = receipts;
+		this.meanCer = meanCer;
+		this.p50Millis = p50Millis;
+		this.p95Millis = p95Millis;
+		this.meanNativeAllocations = meanNativeAllocations;
+		this.stageMeanMicros = Collections.unmodifiableMap(new TreeMap<String, Long>(stageMeanMicros));
+		this.receiptCer = Collections.unmodifiableMap(new TreeMap<String, Float>(receiptCer));
+	}
+
+	/**
+	 * Summarize the runs of a corpus.
+	 *
+	 * @param names The name of each receipt
+	 * @param runs The run of each receipt
+	 * @param cer The character error rate of each receipt
+	 * @return The measurements of the corpus
+	 */
+	public static Measurements of(String[] names, Run[] runs, float[] cer) {
+		int n = runs.length;
+		long[] latencies = new long[n];
+		float cerSum = 0;
+		long nativeSum = 0;
+		Map<String, Long> stageSums = new TreeMap<String, Long>();
+		Map<String, Float> receiptCer = new TreeMap<String, Float>();
+
+		for(int i=0;i<n;i++){
+			Run run = runs[i];
+			latencies[i] = run.getTotalMillis();
+			cerSum += cer[i];
+			nativeSum += run.getNativeAllocations();
+			receiptCer.put(names[i], cer[i]);
+			for(Map.Entry<String, Long> stage : run.getStageMicros().entrySet()){
+				Long sum = stageSums.get(stage.getKey());
+				stageSums.put(stage.getKey(), (sum == null ? 0 : sum) + stage.getValue());
+			}
+		}
+
+		int count = Math.max(1, n);
+		Map<String, Long> stageMeans = new TreeMap<String, Long>();
+		for(Map.Entry<String, Long> stage : stageSums.entrySet()){
+			stageMeans.put(stage.getKey(), stage.getValue() / count);
+		}
+
+		long p50 = Percentiles.percentile(latencies, n, 50);
+		long p95 = Percentiles.sortedPercentile(latencies, n, 95);
+		return new Measurements(n, cerSum / count, p50, p95,
+				nativeSum / (float) count, stageMeans, receiptCer);
+	}
+
+	/**
+	 * @param file A baseline written by save()
+	 * @return The measurements in the file
+	 * @throws IOException if the file is missing or invalid
+	 */
+	public static Measurements load(File file) throws IOException {
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+
+		Map<String, Long> stages = new TreeMap<String, Long>();
+		Map<String, Float> receiptCer = new TreeMap<String, Float>();
+		try {
+			Enumeration<?> keys = props.propertyNames();
+			while(keys.hasMoreElements()){
+				String key = (String) keys.nextElement();
+				String value = props.getProperty(key).trim();
+				if(key.startsWith(STAGE_PREFIX)){
+					stages.put(key, Long.parseLong(value));
+				}else if(key.startsWith(RECEIPT_PREFIX)){
+					receiptCer.put(key.substring(RECEIPT_PREFIX.length()), Float.parseFloat(value));
+				}
+			}
+
+			return new Measurements(
+					Integer.parseInt(required(file, props, KEY_RECEIPTS)),
+					Float.parseFloat(required(file, props, KEY_CER)),
+					Long.parseLong(required(file, props, KEY_P50)),
+					Long.parseLong(required(file, props, KEY_P95)),
+					Float.parseFloat(required(file, props, KEY_NATIVE)),
+					stages,
+					receiptCer);
+		} catch (NumberFormatException e) {
+			throw new IOException(file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param file The baseline file to write
+	 * @param comment A line written at the top of the file, may be null
+	 * @throws IOException
+	 */
+	public void save(File file, String comment) throws IOException {
+		Properties props = new Properties();
+		props.setProperty(KEY_RECEIPTS, Integer.toString(receipts));
+		props.setProperty(KEY_CER, Float.toString(meanCer));
+		props.setProperty(KEY_P50, Long.toString(p50Millis));
+		props.setProperty(KEY_P95, Long.toString(p95Millis));
+		props.setProperty(KEY_NATIVE, Float.toString(meanNativeAllocations));
+		for(Map.Entry<String, Long> stage : stageMeanMicros.entrySet()){
+			props.setProperty(stage.getKey(), stage.getValue().toString());
+		}
+		for(Map.Entry<String, Float> receipt : receiptCer.entrySet()){
+			props.setProperty(RECEIPT_PREFIX + receipt.getKey(), receipt.getValue().toString());
+		}
+
+		OutputStream out = new FileOutputStream(file);
+		try {
+			props.store(out, comment);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String required(File file, Properties props, String key) throws IOException {
+		String value = props.getProperty(key);
+		if(value == null){
+			throw new IOException(file + ": no " + key);
+		}
+		return value.trim();
+	}
+
+	/**
+	 * @return the number of receipts read
+	 */
+	public int getReceiptCount() {
+		return receipts;
+	}
+
+	/**
+	 * @return the mean character error rate of the receipts
+	 */
+	public float getMeanCer() {
+		return meanCer;
+	}
+
+	/**
+	 * @return the median decode to recognition time in milliseconds
+	 */
+	public long getP50Millis() {
+		return p50Millis;
+	}
+
+	/**
+	 * @return the 95th percentile decode to recognition time in milliseconds
+	 */
+	public long getP95Millis() {
+		return p95Millis;
+	}
+
+	/**
+	 * @return the mean number of native allocations per receipt
+	 */
+	public float getMeanNativeAllocations() {
+		return meanNativeAllocations;
+	}
+
+	/**
+	 * @return the mean time of each stage per receipt in microseconds, by stage name
+	 */
+	public Map<String, Long> getStageMeanMicros() {
+		return stageMeanMicros;
+	}
+
+	/**
+	 * @return the character error rate of each receipt, by receipt name
+	 */
+	public Map<String, Float> getReceiptCer() {
+		return receiptCer;
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format(
+				"{0} receipts, cer {1,number,0.000}, p50={2} ms p95={3} ms, {4,number,0.0} native allocations",
+				receipts,
+				meanCer,
+				p50Millis,
+				p95Millis,
+				meanNativeAllocations);
+	}
+}
@@ -0,0 +1,21 @@
+package com.flugtag.regress;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads one receipt of the golden corpus for the
+ * RegressionHarness. PipelineDriver runs the pipeline, on the
+ * native stages on a device or on their recordings on a plain JVM.
+ */
+public interface OcrDriver {
+
+	/**
+	 * Read a receipt and record what it cost.
+	 *
+	 * @param image The encoded receipt image
+	 * @return The text and measurements of the read
+	 * @throws IOException if the receipt could not be read
+	 */
+	public Run read(File image) throws IOException;
+}
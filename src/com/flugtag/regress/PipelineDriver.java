@@ -0,0 +1,155 @@
+package com.flugtag.regress;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.ocr.ImageDecoder;
+import com.flugtag.ocr.NativeEngine;
+import com.flugtag.ocr.OcrEngine;
+import com.flugtag.ocr.Preprocessor;
+import com.flugtag.ocr.ReceiptReader;
+
+/**
+ * Reads receipts with the ReceiptReader of OCRTask and measures
+ * each read through the default MetricsRegistry.
+ *
+ * On a device the native stages run on a NativeEngine, and each
+ * read can be recorded next to its image. On a plain JVM a
+ * ReplayEngine stands in for the native stages with those
+ * recordings, and the rest of the reader runs for real.
+ *
+ * The result cache is never used, since a cache hit would
+ * measure nothing.
+ */
+public class PipelineDriver implements OcrDriver {
+
+	/**
+	 * The reader settings of a corpus, in its folder. Only
+	 * <code>splitColumns=true</code> is read.
+	 */
+	public static final String SETTINGS_FILE = "harness.properties";
+
+	private final Preprocessor preprocessor;
+	private final File recordDir;
+	private final File replayDir;
+	private boolean splitColumns;
+
+	/**
+	 * Read receipts on the native stages without recording them.
+	 *
+	 * @param preprocessor Prepares the decoded image
+	 */
+	public PipelineDriver(Preprocessor preprocessor) {
+		this(preprocessor, null);
+	}
+
+	/**
+	 * Read receipts on the native stages.
+	 *
+	 * @param preprocessor Prepares the decoded image
+	 * @param recordDir Where to save the recording of each read, null to not save them
+	 */
+	public PipelineDriver(Preprocessor preprocessor, File recordDir) {
+		this(preprocessor, recordDir, null);
+	}
+
+	private PipelineDriver(Preprocessor preprocessor, File recordDir, File replayDir) {
+		this.preprocessor = preprocessor;
+		this.recordDir = recordDir;
+		this.replayDir = replayDir;
+	}
+
+	/**
+	 * Read receipts on their recordings, without native libraries.
+	 *
+	 * @param replayDir The folder of the recordings, null for the folder of each image
+	 * @return The driver
+	 */
+	public static PipelineDriver replay(File replayDir) {
+		return new PipelineDriver(null, null, replayDir);
+	}
+
+	/**
+	 * @param splitColumns True to read the item and price columns with their own profiles
+	 */
+	public void setSplitColumns(boolean splitColumns) {
+		this.splitColumns = splitColumns;
+	}
+
+	/**
+	 * Read the corpus with the reader settings in its SETTINGS_FILE,
+	 * if it has one.
+	 *
+	 * @param corpusDir The corpus folder
+	 * @throws IOException if the settings can't be read
+	 */
+	public void loadSettings(File corpusDir) throws IOException {
+		File file = new File(corpusDir, SETTINGS_FILE);
+		if(!file.exists()){
+			return;
+		}
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+		setSplitColumns(Boolean.parseBoolean(props.getProperty("splitColumns")));
+	}
+
+	@Override
+	public Run read(File image) throws IOException {
+		OcrEngine engine;
+		RecordingEngine recording = null;
+		if(preprocessor == null){
+			File dir = replayDir != null ? replayDir : image.getParentFile();
+			engine = ReplayEngine.load(new File(dir, RegressionHarness.baseName(image) + Replay.EXTENSION));
+		}else if(recordDir != null){
+			engine = recording = new RecordingEngine(new NativeEngine(preprocessor));
+		}else{
+			engine = new NativeEngine(preprocessor);
+		}
+
+		ReceiptReader reader = new ReceiptReader(engine, null);
+		reader.setSplitColumns(splitColumns);
+
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.clear();
+
+		long startMillis = System.currentTimeMillis();
+		String text = reader.read(source(image), null);
+		long totalMillis = System.currentTimeMillis() - startMillis;
+		if(text == null){
+			throw new IOException("Could not decode " + image);
+		}
+
+		Map<String, Long> stages = new TreeMap<String, Long>();
+		for(String name : metrics.getHistogramNames()){
+			if(name.startsWith("stage.")){
+				stages.put(name, metrics.timer(name).snapshot().sum);
+			}
+		}
+		long allocations = metrics.counter(MetricsRegistry.NATIVE_ALLOCATIONS).get();
+
+		if(recording != null){
+			recording.save(new File(recordDir, RegressionHarness.baseName(image) + Replay.EXTENSION));
+		}
+		return new Run(text, totalMillis, stages, allocations);
+	}
+
+	private static ImageDecoder.Source source(final File image) {
+		return new ImageDecoder.Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return new FileInputStream(image);
+			}
+		};
+	}
+}
@@ -0,0 +1,106 @@
+package com.flugtag.regress;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.graphics.Rect;
+
+import com.flugtag.ocr.AdaptiveRecognizer;
+import com.flugtag.ocr.DebugImageWriter;
+import com.flugtag.ocr.ImageDecoder;
+import com.flugtag.ocr.LineListener;
+import com.flugtag.ocr.LineResult;
+import com.flugtag.ocr.OcrEngine;
+import com.flugtag.ocr.ProfileSelector;
+import com.flugtag.ocr.RecognitionProfile;
+import com.flugtag.ocr.RecognitionResult;
+import com.flugtag.ocr.TextRegions;
+
+/**
+ * Runs the native stages of another engine and keeps what every
+ * call returned and cost, so ReplayEngine can stand in for them
+ * on a plain JVM. Records one receipt; use a new engine for each.
+ */
+public class RecordingEngine implements OcrEngine {
+	private final OcrEngine engine;
+	private final Replay replay = new Replay();
+
+	/**
+	 * @param engine Runs the stages, usually a NativeEngine
+	 */
+	public RecordingEngine(OcrEngine engine) {
+		this.engine = engine;
+		replay.putEngine(engine.getSignature(), engine.getProfile());
+	}
+
+	/**
+	 * @param file Where to write the recording, <code>receipt.replay</code>
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		replay.save(file);
+	}
+
+	@Override
+	public void setDebugImageWriter(DebugImageWriter debug) {
+		engine.setDebugImageWriter(debug);
+	}
+
+	@Override
+	public String getSignature() {
+		return engine.getSignature();
+	}
+
+	@Override
+	public RecognitionProfile getProfile() {
+		return engine.getProfile();
+	}
+
+	@Override
+	public TextRegions decode(ImageDecoder.Source source) throws IOException {
+		Replay.Cost start = Replay.Cost.start();
+		TextRegions decoded = engine.decode(source);
+		if(decoded != null){
+			replay.putPage(Replay.DECODE, decoded);
+			replay.putCost(Replay.DECODE, Replay.Cost.since(start));
+		}
+		return decoded;
+	}
+
+	@Override
+	public TextRegions detect(TextRegions decoded) {
+		Replay.Cost start = Replay.Cost.start();
+		TextRegions detected = engine.detect(decoded);
+		replay.putPage(Replay.DETECT, detected);
+		replay.putCost(Replay.DETECT, Replay.Cost.since(start));
+		return detected;
+	}
+
+	@Override
+	public TextRegions retry(TextRegions regions, AdaptiveRecognizer.Chain chain, Rect[] boxes) {
+		Replay.Cost start = Replay.Cost.start();
+		TextRegions retry = engine.retry(regions, chain, boxes);
+		String key = Replay.RETRY + chain.getName();
+		replay.putPage(key, retry);
+		replay.putCost(key, Replay.Cost.since(start));
+		return retry;
+	}
+
+	@Override
+	public RecognitionResult recognize(TextRegions regions, LineListener listener,
+			ProfileSelector selector) {
+		Replay.Cost start = Replay.Cost.start();
+		RecognitionResult result = engine.recognize(regions, listener, selector);
+		Replay.Cost cost = Replay.Cost.since(start);
+
+		// Lines are replayed one by one, each with its share of the call
+		LineResult[] lines = result.getLines();
+		for(int i=0;i<lines.length;i++){
+			Rect box = regions.getBox(i);
+			String key = Replay.lineKey(regions.getPageName(), box, selector.select(i, box));
+			replay.putLine(key, lines[i]);
+			replay.putCost(key, cost.share(lines.length));
+		}
+		return result;
+	}
+}
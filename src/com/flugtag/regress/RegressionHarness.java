@@ -0,0 +1,269 @@
+package com.flugtag.regress;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.flugtag.util.FileUtils;
+
+/**
+ * Reads a golden corpus of receipts, measures accuracy and cost
+ * and compares them with a baseline, so a change that makes OCR
+ * slower or worse is caught.
+ *
+ * A corpus is a folder of receipt images, each with its true
+ * text in a file named after it: <code>receipt.jpg</code> and
+ * <code>receipt.expected.txt</code>. Images without expected
+ * text are skipped.
+ *
+ * It runs the whole ReceiptReader through a PipelineDriver.
+ * On a device it reads on the native stages and can record what
+ * each of them returned, <code>receipt.replay</code>. On a plain
+ * JVM a ReplayEngine stands in for the native stages with those
+ * recordings, so the retries, column splitting and line order
+ * are still exercised. Android's Rect and Log come from the JVM
+ * stand-ins in regress/shim, see regress/README:
+ *
+ * <pre>
+ * javac -d out -cp android.jar `find regress/shim src -name '*.java'`
+ * java -cp out:android.jar com.flugtag.regress.RegressionHarness regress/corpus/lines regress/corpus/lines/baseline.properties
+ * </pre>
+ *
+ * main() takes corpusDir baselineFile [--update-baseline]
+ * [--replays dir]. A corpus may hold reader settings in
+ * PipelineDriver.SETTINGS_FILE.
+ *
+ * The exit status is 1 when something regressed past its tolerance.
+ */
+public class RegressionHarness {
+
+	/** The file extension of expected text. */
+	public static final String EXPECTED_EXTENSION = ".expected.txt";
+
+	/**
+	 * How much worse than the baseline a corpus may read.
+	 */
+	public static class Parameters {
+		/** The most the mean character error rate may rise, absolute. */
+		public float maxCerIncrease;
+
+		/** The most the error rate of one receipt may rise, absolute. */
+		public float maxReceiptCerIncrease;
+
+		/** The most the p50 and p95 latencies may rise, relative. */
+		public float maxLatencyIncrease;
+
+		/** The most the mean time of a stage may rise, relative. */
+		public float maxStageIncrease;
+
+		/** Stages faster than this in the baseline are too noisy to check. */
+		public long minStageMicros;
+
+		/** The most the mean native allocations may rise, relative. */
+		public float maxNativeIncrease;
+
+		public Parameters() {
+			maxCerIncrease = 0.02f;
+			maxReceiptCerIncrease = 0.1f;
+			maxLatencyIncrease = 0.15f;
+			maxStageIncrease = 0.25f;
+			minStageMicros = 5000;
+			maxNativeIncrease = 0.1f;
+		}
+	}
+
+	private final OcrDriver driver;
+	private final Parameters params;
+
+	/**
+	 * @param driver Reads each receipt
+	 * @param params The tolerances of check()
+	 */
+	public RegressionHarness(OcrDriver driver, Parameters params) {
+		this.driver = driver;
+		this.params = params;
+	}
+
+	/**
+	 * Read every receipt of a corpus.
+	 *
+	 * @param corpusDir The corpus folder
+	 * @return The measurements of the corpus
+	 * @throws IOException if a receipt could not be read
+	 */
+	public Measurements run(File corpusDir) throws IOException {
+		File[] images = listReceipts(corpusDir);
+		String[] names = new String[images.length];
+		Run[] runs = new Run[images.length];
+		float[] cer = new float[images.length];
+
+		// The first read also loads and compiles the code, it would skew the latencies
+		if(images.length > 0){
+			driver.read(images[0]);
+		}
+		for(int i=0;i<images.length;i++){
+			names[i] = baseName(images[i]);
+			runs[i] = driver.read(images[i]);
+			cer[i] = CharacterErrorRate.measure(readExpected(images[i]), runs[i].getText());
+		}
+		return Measurements.of(names, runs, cer);
+	}
+
+	/**
+	 * Compare measurements with a baseline.
+	 *
+	 * @param baseline The accepted measurements
+	 * @param measured The new measurements
+	 * @return A description of each regression, empty if there are none
+	 */
+	public List<String> check(Measurements baseline, Measurements measured) {
+		List<String> failures = new ArrayList<String>();
+
+		if(measured.getMeanCer() > baseline.getMeanCer() + params.maxCerIncrease){
+			failures.add(MessageFormat.format("cer {0,number,0.000} > baseline {1,number,0.000}",
+					measured.getMeanCer(), baseline.getMeanCer()));
+		}
+		for(Map.Entry<String, Float> receipt : baseline.getReceiptCer().entrySet()){
+			Float cer = measured.getReceiptCer().get(receipt.getKey());
+			if(cer == null){
+				failures.add(receipt.getKey() + " was not read");
+			}else if(cer > receipt.getValue() + params.maxReceiptCerIncrease){
+				failures.add(MessageFormat.format("{0} cer {1,number,0.000} > baseline {2,number,0.000}",
+						receipt.getKey(), cer, receipt.getValue()));
+			}
+		}
+
+		checkRelative(failures, "latency p50", baseline.getP50Millis(), measured.getP50Millis(),
+				params.maxLatencyIncrease);
+		checkRelative(failures, "latency p95", baseline.getP95Millis(), measured.getP95Millis(),
+				params.maxLatencyIncrease);
+		for(Map.Entry<String, Long> stage : baseline.getStageMeanMicros().entrySet()){
+			Long micros = measured.getStageMeanMicros().get(stage.getKey());
+			if(micros != null && stage.getValue() >= params.minStageMicros){
+				checkRelative(failures, stage.getKey(), stage.getValue(), micros,
+						params.maxStageIncrease);
+			}
+		}
+		checkRelative(failures, "native allocations", baseline.getMeanNativeAllocations(),
+				measured.getMeanNativeAllocations(), params.maxNativeIncrease);
+
+		return failures;
+	}
+
+	private static void checkRelative(List<String> failures, String name,
+			double baseline, double measured, float maxIncrease) {
+		if(measured > baseline * (1 + maxIncrease)){
+			failures.add(MessageFormat.format("{0} {1,number,0.#} > baseline {2,number,0.#} + {3,number,percent}",
+					name, measured, baseline, maxIncrease));
+		}
+	}
+
+	/**
+	 * Find the receipts of a corpus that have expected text.
+	 *
+	 * @param dir The corpus folder
+	 * @return The images in name order
+	 */
+	public static File[] listReceipts(File dir) {
+		List<File> receipts = new ArrayList<File>();
+		for(File file : FileUtils.listImages(dir)){
+			if(expectedFile(file).exists()){
+				receipts.add(file);
+			}
+		}
+		return receipts.toArray(new File[receipts.size()]);
+	}
+
+	/**
+	 * @param image A receipt image
+	 * @return the file name of the image without its extension
+	 */
+	public static String baseName(File image) {
+		String name = image.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	private static File expectedFile(File image) {
+		return new File(image.getParentFile(), baseName(image) + EXPECTED_EXTENSION);
+	}
+
+	private static String readExpected(File image) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(expectedFile(image)), "UTF-8"));
+		try {
+			String line;
+			while((line = reader.readLine()) != null){
+				sb.append(line).append('\n');
+			}
+		} finally {
+			reader.close();
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Read a corpus on its recordings and check it against a baseline.
+	 *
+	 * @param args corpusDir baselineFile [--update-baseline] [--replays dir]
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2){
+			System.err.println("Usage: RegressionHarness corpusDir baselineFile [--update-baseline] [--replays dir]");
+			System.exit(2);
+		}
+		File corpusDir = new File(args[0]);
+		File baselineFile = new File(args[1]);
+		boolean update = false;
+		File replayDir = null;
+		for(int i=2;i<args.length;i++){
+			if("--update-baseline".equals(args[i])){
+				update = true;
+			}else if("--replays".equals(args[i]) && i + 1 < args.length){
+				replayDir = new File(args[++i]);
+			}else{
+				System.err.println("Unknown argument: " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		PipelineDriver driver = PipelineDriver.replay(replayDir);
+		driver.loadSettings(corpusDir);
+		RegressionHarness harness = new RegressionHarness(driver, new Parameters());
+		Measurements measured;
+		try {
+			measured = harness.run(corpusDir);
+		} catch (IllegalStateException e) {
+			// The pipeline now makes native calls that were not made when recording
+			System.out.println("REGRESSION: " + e.getMessage());
+			System.out.println("Record the corpus again if the change is intended");
+			System.exit(1);
+			return;
+		}
+		System.out.println("Measured: " + measured);
+
+		if(update || !baselineFile.exists()){
+			measured.save(baselineFile, "RegressionHarness baseline of " + corpusDir.getName());
+			System.out.println("Baseline written to " + baselineFile);
+			return;
+		}
+
+		Measurements baseline = Measurements.load(baselineFile);
+		System.out.println("Baseline: " + baseline);
+		List<String> failures = harness.check(baseline, measured);
+		for(String failure : failures){
+			System.out.println("REGRESSION: " + failure);
+		}
+		if(!failures.isEmpty()){
+			System.exit(1);
+		}
+		System.out.println("No regressions");
+	}
+}
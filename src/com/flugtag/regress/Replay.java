@@ -0,0 +1,313 @@
+package com.flugtag.regress;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import android.graphics.Rect;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.ocr.LineResult;
+import com.flugtag.ocr.RecognitionProfile;
+import com.flugtag.ocr.TextRegions;
+
+/**
+ * What the native stages returned while one receipt was read,
+ * and what each call cost, saved next to the receipt image as
+ * <code>receipt.replay</code>.
+ *
+ * A replay is a properties file. Pages are kept by the call that
+ * made them: <code>decode</code>, <code>detect</code> and
+ * <code>retry.&lt;chain&gt;</code>. Lines are kept by page, box
+ * and profile, <code>line.page.10,20,300,40.receipt-fast</code>,
+ * so they are found again whatever order they are asked for in.
+ * Every call has its cost under its key: <code>.micros</code>,
+ * <code>.native</code> and <code>.stage.*</code>.
+ */
+public class Replay {
+
+	/** The file extension of replays. */
+	public static final String EXTENSION = ".replay";
+
+	static final String DECODE = "decode";
+	static final String DETECT = "detect";
+	static final String RETRY = "retry.";
+	static final String LINE = "line.";
+
+	private static final String KEY_SIGNATURE = "signature";
+	private static final String KEY_PROFILE = "profile";
+	private static final String MICROS = ".micros";
+	private static final String NATIVE = ".native";
+	private static final String STAGE = ".stage.";
+
+	private final Properties props;
+
+	public Replay() {
+		this(new Properties());
+	}
+
+	private Replay(Properties props) {
+		this.props = props;
+	}
+
+	/**
+	 * @param file A replay saved by save()
+	 * @return The replay
+	 * @throws IOException if the file is missing or can't be read
+	 */
+	public static Replay load(File file) throws IOException {
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+		return new Replay(props);
+	}
+
+	/**
+	 * @param file The properties file to write
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			props.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param signature The signature of the recorded engine
+	 * @param profile The profile it read lines with when none was picked
+	 */
+	void putEngine(String signature, RecognitionProfile profile) {
+		props.setProperty(KEY_SIGNATURE, signature);
+		props.setProperty(KEY_PROFILE, profile.toString());
+	}
+
+	String getSignature() {
+		return get(KEY_SIGNATURE);
+	}
+
+	RecognitionProfile getProfile() {
+		String name = get(KEY_PROFILE);
+		RecognitionProfile profile = RecognitionProfile.forName(name);
+		if(profile == null){
+			throw new IllegalStateException("Unknown profile " + name + " in replay");
+		}
+		return profile;
+	}
+
+	/**
+	 * Record the page a call returned.
+	 */
+	void putPage(String key, TextRegions regions) {
+		props.setProperty(key + ".width", Integer.toString(regions.getPageWidth()));
+		props.setProperty(key + ".height", Integer.toString(regions.getPageHeight()));
+		props.setProperty(key + ".depth", Integer.toString(regions.getPageDepth()));
+
+		StringBuilder sb = new StringBuilder();
+		for(Rect box : regions.getBoxes()){
+			if(sb.length() > 0){
+				sb.append(';');
+			}
+			sb.append(toString(box));
+		}
+		props.setProperty(key + ".boxes", sb.toString());
+	}
+
+	/**
+	 * @return the page a call returned, without a Pix
+	 */
+	TextRegions getPage(String key, String pageName) {
+		String boxes = get(key + ".boxes");
+		String[] parts = boxes.length() > 0 ? boxes.split(";") : new String[0];
+		Rect[] rects = new Rect[parts.length];
+		for(int i=0;i<rects.length;i++){
+			rects[i] = parseRect(parts[i]);
+		}
+		return new TextRegions(pageName,
+				getInt(key + ".width"),
+				getInt(key + ".height"),
+				getInt(key + ".depth"),
+				rects);
+	}
+
+	/**
+	 * @param page The name of the page the line was read on
+	 * @param box The bounds of the line on the page
+	 * @param profile The profile it was read with
+	 * @return the key of the line
+	 */
+	static String lineKey(String page, Rect box, RecognitionProfile profile) {
+		return LINE + page + "." + toString(box) + "." + profile;
+	}
+
+	void putLine(String key, LineResult line) {
+		props.setProperty(key + ".text", line.getText());
+		props.setProperty(key + ".confidence", Integer.toString(line.getConfidence()));
+
+		StringBuilder sb = new StringBuilder();
+		for(int conf : line.getWordConfidences()){
+			if(sb.length() > 0){
+				sb.append(',');
+			}
+			sb.append(conf);
+		}
+		props.setProperty(key + ".words", sb.toString());
+	}
+
+	/**
+	 * @return the recorded line, indexed and placed as asked
+	 */
+	LineResult getLine(String key, int index, Rect box) {
+		String words = get(key + ".words");
+		String[] parts = words.length() > 0 ? words.split(",") : new String[0];
+		int[] confidences = new int[parts.length];
+		for(int i=0;i<parts.length;i++){
+			confidences[i] = parseInt(key + ".words", parts[i]);
+		}
+		return new LineResult(index, get(key + ".text"), getInt(key + ".confidence"), box, confidences);
+	}
+
+	boolean has(String key) {
+		return props.containsKey(key + MICROS);
+	}
+
+	void putCost(String key, Cost cost) {
+		props.setProperty(key + MICROS, Long.toString(cost.micros));
+		props.setProperty(key + NATIVE, Long.toString(cost.nativeAllocations));
+		for(Map.Entry<String, Long> stage : cost.stageMicros.entrySet()){
+			props.setProperty(key + STAGE + stage.getKey(), stage.getValue().toString());
+		}
+	}
+
+	Cost getCost(String key) {
+		Map<String, Long> stages = new TreeMap<String, Long>();
+		String prefix = key + STAGE;
+		Enumeration<?> names = props.propertyNames();
+		while(names.hasMoreElements()){
+			String name = (String) names.nextElement();
+			if(name.startsWith(prefix)){
+				stages.put(name.substring(prefix.length()), getLong(name));
+			}
+		}
+		return new Cost(getLong(key + MICROS), getLong(key + NATIVE), stages);
+	}
+
+	private String get(String key) {
+		String value = props.getProperty(key);
+		if(value == null){
+			throw new IllegalStateException("Not recorded: " + key);
+		}
+		return value;
+	}
+
+	private int getInt(String key) {
+		return parseInt(key, get(key));
+	}
+
+	private long getLong(String key) {
+		String value = get(key);
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalStateException(key + " is not a number: " + value);
+		}
+	}
+
+	private static int parseInt(String key, String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalStateException(key + " is not a number: " + value);
+		}
+	}
+
+	private static String toString(Rect box) {
+		return box.left + "," + box.top + "," + box.right + "," + box.bottom;
+	}
+
+	private static Rect parseRect(String text) {
+		String[] parts = text.split(",");
+		if(parts.length != 4){
+			throw new IllegalStateException("Not a box: " + text);
+		}
+		return new Rect(
+				parseInt("box", parts[0]),
+				parseInt("box", parts[1]),
+				parseInt("box", parts[2]),
+				parseInt("box", parts[3]));
+	}
+
+	/**
+	 * The time and native allocations of one call, measured
+	 * through the default MetricsRegistry.
+	 */
+	static class Cost {
+		final long micros;
+		final long nativeAllocations;
+		final Map<String, Long> stageMicros;
+
+		Cost(long micros, long nativeAllocations, Map<String, Long> stageMicros) {
+			this.micros = micros;
+			this.nativeAllocations = nativeAllocations;
+			this.stageMicros = stageMicros;
+		}
+
+		/**
+		 * @return the totals so far, to measure a call against with since()
+		 */
+		static Cost start() {
+			MetricsRegistry metrics = MetricsRegistry.getDefault();
+			Map<String, Long> stages = new TreeMap<String, Long>();
+			for(String name : metrics.getHistogramNames()){
+				if(name.startsWith("stage.") && !name.equals(MetricsRegistry.TOTAL)){
+					stages.put(name, metrics.timer(name).snapshot().sum);
+				}
+			}
+			return new Cost(System.nanoTime() / 1000,
+					metrics.counter(MetricsRegistry.NATIVE_ALLOCATIONS).get(), stages);
+		}
+
+		/**
+		 * @param start The totals before the call
+		 * @return what the call cost
+		 */
+		static Cost since(Cost start) {
+			Cost now = start();
+			Map<String, Long> stages = new TreeMap<String, Long>();
+			for(Map.Entry<String, Long> stage : now.stageMicros.entrySet()){
+				Long before = start.stageMicros.get(stage.getKey());
+				long micros = stage.getValue() - (before != null ? before : 0);
+				if(micros > 0){
+					stages.put(stage.getKey(), micros);
+				}
+			}
+			return new Cost(now.micros - start.micros,
+					now.nativeAllocations - start.nativeAllocations, stages);
+		}
+
+		/**
+		 * @param parts How many lines shared the call
+		 * @return the share of one of them
+		 */
+		Cost share(int parts) {
+			Map<String, Long> stages = new TreeMap<String, Long>();
+			for(Map.Entry<String, Long> stage : stageMicros.entrySet()){
+				stages.put(stage.getKey(), stage.getValue() / parts);
+			}
+			return new Cost(micros / parts, nativeAllocations / parts, stages);
+		}
+	}
+}
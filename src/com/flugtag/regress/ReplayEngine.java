@@ -0,0 +1,130 @@
+package com.flugtag.regress;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import android.graphics.Rect;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.ocr.AdaptiveRecognizer;
+import com.flugtag.ocr.DebugImageWriter;
+import com.flugtag.ocr.ImageDecoder;
+import com.flugtag.ocr.LineListener;
+import com.flugtag.ocr.LineResult;
+import com.flugtag.ocr.OcrEngine;
+import com.flugtag.ocr.ProfileSelector;
+import com.flugtag.ocr.RecognitionProfile;
+import com.flugtag.ocr.RecognitionResult;
+import com.flugtag.ocr.TextRegions;
+
+/**
+ * Stands in for the native stages with what RecordingEngine kept
+ * of one receipt. Needs no native libraries, so everything above
+ * the stages runs on a plain JVM: the retries, column splitting,
+ * row pairing and line order of ReceiptReader.
+ *
+ * Each call takes as long as it did when recorded and adds its
+ * stage times and native allocations to the default
+ * MetricsRegistry, so latency is measured as on the device.
+ * Pages have no Pix. A call that was not recorded, a page or a
+ * line the Java code did not ask for back then, throws an
+ * IllegalStateException: record the corpus again.
+ */
+public class ReplayEngine implements OcrEngine {
+	private final Replay replay;
+
+	/**
+	 * @param replay What the native stages returned for the receipt
+	 */
+	public ReplayEngine(Replay replay) {
+		this.replay = replay;
+	}
+
+	/**
+	 * @param file A recording, <code>receipt.replay</code>
+	 * @return An engine replaying it
+	 * @throws IOException if the file is missing or can't be read
+	 */
+	public static ReplayEngine load(File file) throws IOException {
+		if(!file.exists()){
+			throw new IOException("No recording " + file);
+		}
+		return new ReplayEngine(Replay.load(file));
+	}
+
+	@Override
+	public void setDebugImageWriter(DebugImageWriter debug) {
+		// There are no images to write
+	}
+
+	@Override
+	public String getSignature() {
+		return replay.getSignature();
+	}
+
+	@Override
+	public RecognitionProfile getProfile() {
+		return replay.getProfile();
+	}
+
+	@Override
+	public TextRegions decode(ImageDecoder.Source source) throws IOException {
+		spend(Replay.DECODE);
+		return replay.getPage(Replay.DECODE, TextRegions.DECODED);
+	}
+
+	@Override
+	public TextRegions detect(TextRegions decoded) {
+		decoded.recycle();
+		spend(Replay.DETECT);
+		return replay.getPage(Replay.DETECT, TextRegions.DETECTED);
+	}
+
+	@Override
+	public TextRegions retry(TextRegions regions, AdaptiveRecognizer.Chain chain, Rect[] boxes) {
+		String key = Replay.RETRY + chain.getName();
+		spend(key);
+		TextRegions page = replay.getPage(key, chain.getName());
+		return new TextRegions(chain.getName(),
+				page.getPageWidth(), page.getPageHeight(), page.getPageDepth(), boxes);
+	}
+
+	@Override
+	public RecognitionResult recognize(TextRegions regions, LineListener listener,
+			ProfileSelector selector) {
+		LineResult[] lines = new LineResult[regions.size()];
+		for(int i=0;i<lines.length;i++){
+			Rect box = regions.getBox(i);
+			String key = Replay.lineKey(regions.getPageName(), box, selector.select(i, box));
+			spend(key);
+			lines[i] = replay.getLine(key, i, box);
+			if(listener != null){
+				listener.onLineRecognized(lines[i]);
+			}
+		}
+		return new RecognitionResult(lines);
+	}
+
+	/**
+	 * Take as long as the recorded call and add its cost to the metrics.
+	 */
+	private void spend(String key) {
+		if(!replay.has(key)){
+			throw new IllegalStateException("Not recorded: " + key + ", record the corpus again");
+		}
+		Replay.Cost cost = replay.getCost(key);
+
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		for(Map.Entry<String, Long> stage : cost.stageMicros.entrySet()){
+			metrics.timer(stage.getKey()).record(stage.getValue());
+		}
+		metrics.counter(MetricsRegistry.NATIVE_ALLOCATIONS).add(cost.nativeAllocations);
+
+		try {
+			Thread.sleep(cost.micros / 1000, (int) (cost.micros % 1000) * 1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
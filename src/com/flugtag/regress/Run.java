@@ -0,0 +1,59 @@
+package com.flugtag.regress;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The text of one receipt and what reading it cost: the total
+ * time, the time spent in each stage and the number of native
+ * allocations.
+ */
+public class Run {
+
+	private final String text;
+	private final long totalMillis;
+	private final Map<String, Long> stageMicros;
+	private final long nativeAllocations;
+
+	/**
+	 * @param text The text read, never null
+	 * @param totalMillis The decode to recognition time
+	 * @param stageMicros The time spent in each stage, by MetricsRegistry stage name
+	 * @param nativeAllocations The number of images allocated by native code
+	 */
+	public Run(String text, long totalMillis, Map<String, Long> stageMicros, long nativeAllocations) {
+		this.text = text;
+		this.totalMillis = totalMillis;
+		this.stageMicros = Collections.unmodifiableMap(new TreeMap<String, Long>(stageMicros));
+		this.nativeAllocations = nativeAllocations;
+	}
+
+	/**
+	 * @return the text read
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the decode to recognition time in milliseconds
+	 */
+	public long getTotalMillis() {
+		return totalMillis;
+	}
+
+	/**
+	 * @return the time spent in each stage in microseconds, by stage name
+	 */
+	public Map<String, Long> getStageMicros() {
+		return stageMicros;
+	}
+
+	/**
+	 * @return the number of images allocated by native code
+	 */
+	public long getNativeAllocations() {
+		return nativeAllocations;
+	}
+}
@@ -0,0 +1,223 @@
+package com.flugtag.task;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.ocr.BatchReport;
+import com.flugtag.ocr.OcrPipeline;
+import com.flugtag.ocr.ParallelRecognizer;
+import com.flugtag.ocr.ReceiptJob;
+import com.flugtag.util.FileUtils;
+import com.googlecode.leptonica.android.NativeMemory;
+
+/**
+ * An AsyncTask that reads every receipt image in a folder
+ * through the OcrPipeline. The text of each receipt is written
+ * next to it, or to the output folder, as a .txt file named
+ * after the image. A progress dialog is shown while processing.
+ */
+public class BatchOCRTask extends AsyncTask<File, Integer, BatchReport> {
+	private final String TAG = "BatchOCRTask";
+
+	/** The file extension of written results. */
+	public static final String RESULT_EXTENSION = ".txt";
+
+	private Context context;
+	private ProgressDialog dialog;
+	private AsyncTaskCompleteListener<BatchReport> listener;
+
+	private File outputDir;
+	private OcrPipeline.Parameters params = new OcrPipeline.Parameters();
+	private int recognizeWorkers;
+
+	private int total;
+
+	/**
+	 * Construct a BatchOCRTask with the provided context.
+	 *
+	 * @param ctx The context to use when launching the progress dialog.
+	 * @param listener Receives the report once every receipt is done
+	 */
+	public BatchOCRTask(Context ctx, AsyncTaskCompleteListener<BatchReport> listener){
+		this.context = ctx;
+		this.listener = listener;
+		this.recognizeWorkers = ParallelRecognizer.getInstance().getWorkerCount();
+	}
+
+	/**
+	 * @param outputDir Where to write results, null to write next to each image
+	 */
+	public void setOutputDir(File outputDir){
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * @param params The thread and queue sizes of the pipeline stages
+	 */
+	public void setPipelineParameters(OcrPipeline.Parameters params){
+		this.params = params;
+	}
+
+	/**
+	 * @param recognizeWorkers The number of lines recognized at once
+	 */
+	public void setRecognizeWorkers(int recognizeWorkers){
+		this.recognizeWorkers = recognizeWorkers;
+	}
+
+	/**
+	 * Opens the progress dialog.
+	 *
+	 * @see android.os.AsyncTask#onPreExecute()
+	 */
+	@Override
+	protected void onPreExecute() {
+		super.onPreExecute();
+
+		dialog = new ProgressDialog(context);
+		dialog.setMessage("Reading Receipts...");
+		dialog.show();
+	}
+
+	/**
+	 * Shows the number of receipts read so far.
+	 *
+	 * @see android.os.AsyncTask#onProgressUpdate(Progress[])
+	 */
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		super.onProgressUpdate(values);
+
+		dialog.setMessage("Reading Receipts... " + values[0] + "/" + total);
+	}
+
+	/**
+	 * Dismisses the progress dialog.
+	 *
+	 * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
+	 */
+	@Override
+	protected void onPostExecute(BatchReport result) {
+		super.onPostExecute(result);
+
+		dialog.dismiss();
+
+		listener.onTaskComplete(result);
+	}
+
+	/**
+	 * Runs every image of the folder through the pipeline.
+	 *
+	 * @see android.os.AsyncTask#doInBackground(Params[])
+	 */
+	@Override
+	protected BatchReport doInBackground(File... params) {
+		File[] images = FileUtils.listImages(params[0]);
+		total = images.length;
+		Log.i(TAG, "Batch: starting " + total + " receipts from " + params[0]);
+
+		if(outputDir != null && !outputDir.exists()){
+			outputDir.mkdirs();
+		}
+
+		// The recognizer is shared with interactive reads, which keep their own count
+		ParallelRecognizer recognizer = ParallelRecognizer.getInstance();
+		int previousWorkers = recognizer.getWorkerCount();
+		recognizer.setWorkerCount(recognizeWorkers);
+		ResultWriter writer = new ResultWriter(images.length);
+		OcrPipeline pipeline = new OcrPipeline(this.params, writer);
+
+		long startMillis = System.currentTimeMillis();
+		NativeMemory.Watermark watermark = NativeMemory.startWatermark();
+		pipeline.start();
+		try {
+			for(File image : images){
+				pipeline.submit(new ReceiptJob(image));
+			}
+			pipeline.shutdown();
+		} catch (InterruptedException e) {
+			Log.w(TAG, "Batch: interrupted");
+			Thread.currentThread().interrupt();
+		} finally {
+			// Nothing is in flight once the stage threads are joined
+			pipeline.stopNow();
+			recognizer.setWorkerCount(previousWorkers);
+			watermark.stop();
+		}
+		long deltaMillis = System.currentTimeMillis() - startMillis;
+
+		BatchReport report = writer.report(deltaMillis);
+		Log.i(TAG, "Batch: " + report);
+		Log.i(TAG, "Batch: native peak " + watermark.getPeakBytes() / 1024 + " KB; "
+				+ NativeMemory.summary());
+		Log.i(TAG, MetricsRegistry.getDefault().toString());
+		try {
+			MetricsRegistry.getDefault().writeSnapshot();
+		} catch (IOException e) {
+			Log.w(TAG, "Failed to write metrics", e);
+		}
+		return report;
+	}
+
+	/**
+	 * Writes each result as it completes and records its latency.
+	 */
+	private class ResultWriter implements OcrPipeline.Listener {
+		private final long[] latencies;
+		private int completed;
+		private int failures;
+
+		ResultWriter(int size){
+			latencies = new long[size];
+		}
+
+		@Override
+		public synchronized void onReceiptComplete(ReceiptJob job) {
+			latencies[completed++] = job.getLatencyMillis();
+
+			if(job.isSuccessful()){
+				try {
+					write(job);
+				} catch (IOException e) {
+					Log.e(TAG, "Failed to write result for " + job.getFile(), e);
+					failures++;
+				}
+			}else{
+				failures++;
+			}
+
+			publishProgress(completed);
+		}
+
+		private void write(ReceiptJob job) throws IOException {
+			File image = job.getFile();
+			File dir = outputDir != null ? outputDir : image.getParentFile();
+			String name = image.getName();
+			int dot = name.lastIndexOf('.');
+			if(dot > 0){
+				name = name.substring(0, dot);
+			}
+
+			Writer out = new OutputStreamWriter(
+					new FileOutputStream(new File(dir, name + RESULT_EXTENSION)), "UTF-8");
+			try {
+				out.write(job.getResult().getText());
+			} finally {
+				out.close();
+			}
+		}
+
+		synchronized BatchReport report(long elapsedMillis){
+			return new BatchReport(latencies, completed, failures, elapsedMillis);
+		}
+	}
+}
@@ -1,32 +1,27 @@
 package com.flugtag.task;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.text.MessageFormat;
+import java.util.BitSet;
 
 import android.app.ProgressDialog;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.util.Log;
 
-import com.flugtag.util.Paths;
-import com.googlecode.eyesfree.textdetect.HydrogenTextDetector;
-import com.googlecode.eyesfree.textdetect.Thresholder;
-import com.googlecode.leptonica.android.AdaptiveMap;
-import com.googlecode.leptonica.android.Binarize;
-import com.googlecode.leptonica.android.Constants;
-import com.googlecode.leptonica.android.Convert;
-import com.googlecode.leptonica.android.Enhance;
-import com.googlecode.leptonica.android.Pix;
-import com.googlecode.leptonica.android.Pixa;
-import com.googlecode.leptonica.android.ReadFile;
-import com.googlecode.leptonica.android.Scale;
-import com.googlecode.leptonica.android.WriteFile;
-import com.googlecode.tesseract.android.TessBaseAPI;
+import com.flugtag.metrics.MetricsRegistry;
+import com.flugtag.ocr.DebugImageWriter;
+import com.flugtag.ocr.ImageDecoder;
+import com.flugtag.ocr.LineListener;
+import com.flugtag.ocr.LineResult;
+import com.flugtag.ocr.Preprocessor;
+import com.flugtag.ocr.ProfileSelector;
+import com.flugtag.ocr.ReceiptReader;
+import com.flugtag.ocr.RecognitionProfile;
+import com.flugtag.ocr.ResultCache;
+import com.flugtag.ocr.TessEnginePool;
+import com.googlecode.leptonica.android.NativeLeakTracker;
 
 /**
  * An AsyncTask that installs the languages in the correct
@@ -40,19 +35,22 @@ import com.googlecode.tesseract.android.TessBaseAPI;
  * around but will take some time.
  * 
  */
-public class OCRTask extends AsyncTask<Uri, Void, String> {
+public class OCRTask extends AsyncTask<Uri, LineResult, String> {
 	private final String TAG = "OCRTask";
 	
-	private static final boolean DEBUG = true;
-	
-    /** We'd rather not process anything larger than 720p. */
-    private static final int MAX_IMAGE_AREA = 1280 * 720;
+    /** How long a debug run waits for its images to be written. */
+    private static final long DRAIN_TIMEOUT_MILLIS = 10000;
 	
 	private Context context;
 	private ProgressDialog dialog;
 	private AsyncTaskCompleteListener<String> listener;
+	private LineListener lineListener;
+	// Retries publish improved lines again, so count each index once
+	private final BitSet linesRead = new BitSet();
 
-	private Uri dbgUri;
+	private DebugImageWriter debug;
+	private ProfileSelector profileSelector;
+	private boolean splitColumns;
 	
 	/**
 	 * Construct a LanguageInstallTask with the provided context.
@@ -64,6 +62,47 @@ public class OCRTask extends AsyncTask<Uri, Void, String> {
 		this.listener = listener;
 	}
 
+	/**
+	 * Construct an OCRTask that also reports each line as it is read.
+	 * 
+	 * @param ctx The context to use when launching the progress dialog. 
+	 * @param listener Receives the full text once every line is read
+	 * @param lineListener Receives each line on the UI thread as it is read, not on a cache hit
+	 */
+	public OCRTask(Context ctx, AsyncTaskCompleteListener<String> listener, LineListener lineListener){
+		this(ctx, listener);
+		this.lineListener = lineListener;
+	}
+
+	/**
+	 * Read every line of the receipt with one profile.
+	 * 
+	 * @param profile The recognition settings, null for the recognizer's own
+	 */
+	public void setProfile(RecognitionProfile profile){
+		this.profileSelector = profile;
+	}
+
+	/**
+	 * Pick the profile of each line. The selector's signature
+	 * is part of the result cache key.
+	 * 
+	 * @param selector Picks the profile of each line, null for the recognizer's own
+	 */
+	public void setProfileSelector(ProfileSelector selector){
+		this.profileSelector = selector;
+	}
+
+	/**
+	 * Read the item and price columns of the receipt with their
+	 * own profiles. Replaces the profile and weak line retries.
+	 * 
+	 * @param splitColumns True to split the receipt into columns
+	 */
+	public void setSplitColumns(boolean splitColumns){
+		this.splitColumns = splitColumns;
+	}
+
 	/**
 	 * Opens the progress dialog.
 	 * 
@@ -79,6 +118,26 @@ public class OCRTask extends AsyncTask<Uri, Void, String> {
 	}
 
 	
+	/**
+	 * Shows the latest line in the progress dialog and
+	 * passes it on to the line listener.
+	 * 
+	 * @see android.os.AsyncTask#onProgressUpdate(Progress[])
+	 */
+	@Override
+	protected void onProgressUpdate(LineResult... values) {
+		super.onProgressUpdate(values);
+		
+		for(LineResult line : values){
+			linesRead.set(line.getIndex());
+			dialog.setMessage("Reading Receipt... " + linesRead.cardinality() + " lines\n" + line.getText());
+			
+			if(lineListener != null){
+				lineListener.onLineRecognized(line);
+			}
+		}
+	}
+	
 	/**
 	 * Dismisses the progress dialog.
 	 * 
@@ -102,157 +161,76 @@ public class OCRTask extends AsyncTask<Uri, Void, String> {
 	@Override
 	protected String doInBackground(Uri... params) {
 		Log.i(TAG, "OCR: starting");
-		long startMillis = System.currentTimeMillis();
 
         // Use our camera provided data         
-		Uri data = params[0];
-		dbgUri = new Uri.Builder().path("/sdcard/").appendPath("flug"+data.getLastPathSegment()).build();
-        Pix pix = getPixFromUri(data);
-        pix = preprocess(pix);
-        
-		Pixa pixa = slice(pix);
+		final Uri data = params[0];
+		Uri dbgUri = new Uri.Builder().path("/sdcard/").appendPath("flug"+data.getLastPathSegment()).build();
+		debug = DebugImageWriter.forReceipt(dbgUri.getPath());
 		
-		TessBaseAPI tessApi = new TessBaseAPI();
-		tessApi.init(Paths.OCR_DATA, "eng");
-		tessApi.setPageSegMode(TessBaseAPI.PSM_SINGLE_LINE);
-		StringBuilder sb = new StringBuilder();
-		int confidence = 0;
-		int num = pixa.size();
-		for(int i=0;i<num;i++){
-			Pix pixi = pixa.getPix(i);
-			tessApi.setImage(pixi);
-
-			sb.append(tessApi.getUTF8Text()).append("\n");
-			confidence += tessApi.meanConfidence() / num;
-			tessApi.clear();
+		// Debug runs record where every image was allocated
+		long leakMark = debug != null ? NativeLeakTracker.begin() : 0;
+		try {
+			ReceiptReader reader = new ReceiptReader(Preprocessor.create(), ResultCache.getInstance(context));
+			reader.setDebugImageWriter(debug);
+			reader.setProfileSelector(profileSelector);
+			reader.setSplitColumns(splitColumns);
 			
-			dumpDebugImage("part"+i, pixi);
-			pixi.recycle();
-		}
-		pixa.recycle();
-		tessApi.end();
-
-		long endMillis = System.currentTimeMillis();
-		long deltaMillis = endMillis - startMillis;
-		
-		Log.i(TAG,
-				MessageFormat.format(
-						"OCR: {0} milliseconds with {1} confidence",
-						deltaMillis,
-						confidence));
-		
-		return sb.toString();
-	}
-	
-	private Pixa slice(Pix pix){
-		HydrogenTextDetector htd = new HydrogenTextDetector();
-        HydrogenTextDetector.Parameters hydrogenParams = htd.getParameters();
-        hydrogenParams.debug = true;
-        hydrogenParams.skew_enabled = true;
-        htd.setParameters(hydrogenParams);
-
-		htd.setSourceImage(pix);
-		pix.recycle();
-		htd.detectText();
-        Pixa unsorted = htd.getTextAreas();
-        Pixa pixa = unsorted.sort(Constants.L_SORT_BY_Y, Constants.L_SORT_INCREASING);
-        unsorted.recycle();
-        htd.clear();
-        return pixa;
-	}
-	
-	private Pix preprocess(Pix pix){
-		// Shrink if necessary
-		pix = resizePix(pix);
-		pix = convertTo8(pix);
-		pix = adaptiveMap(pix);
-		//pix = binarize(pix);
-		//pix = enhance(pix);
-		//pix = threshold(pix);
-		return pix;
-	}
-	
-	private Pix threshold(Pix pix){
-		Pix temp = Thresholder.edgeAdaptiveThreshold(pix);
-		pix.recycle();
-		dumpDebugImage("EdgeAdaptiveThreshold", temp);
-		return temp;
-	}
-	
-	private Pix enhance(Pix pix){
-		Pix temp = Enhance.unsharpMasking(pix, 2, (float) 0.5);
-		pix.recycle();
-		dumpDebugImage("Enhance", temp);
-		return temp;
-	}
-	
-	private Pix binarize(Pix pix){
-		Pix temp = Binarize.otsuAdaptiveThreshold(pix);
-		pix.recycle();
-		dumpDebugImage("Binarize", temp);
-		return temp;
-	}
-	
-	private Pix adaptiveMap(Pix pix){
-		Pix temp = AdaptiveMap.backgroundNormMorph(pix);
-		pix.recycle();
-		dumpDebugImage("AdaptiveMap", temp);
-		return temp;
-	}
-	
-	private void dumpDebugImage(String name, Pix pix){
-		if(DEBUG && dbgUri != null && pix != null){
-			File file = new File(dbgUri.getPath() + name + ".bmp");
-			Log.i(TAG, "Writing debug image to: "+file.getPath());
-			WriteFile.writeImpliedFormat(pix, file);
-		}
-	}
-	
-	private Pix convertTo8(Pix pix){
-		Pix temp = Convert.convertTo8(pix);
-		pix.recycle();
-		dumpDebugImage("Convert", temp);
-		return temp;
-	}
-	
-	private Pix resizePix(Pix pix){
-		int[] dimensions = pix.getDimensions();
-		int area = dimensions[0] * dimensions[1];
-		if (area > MAX_IMAGE_AREA) {
-			float scale = MAX_IMAGE_AREA / (float) area;
-			Log.i(TAG, "Scaling input image to a factor of " + scale);
-			Pix temp = Scale.scale(pix, scale);
-			pix.recycle();
-			dumpDebugImage("Scale", temp);
-			return temp;
+			ImageDecoder.Source source = new ImageDecoder.Source() {
+				@Override
+				public InputStream open() throws IOException {
+					return context.getContentResolver().openInputStream(data);
+				}
+			};
+			LineListener progress = new LineListener() {
+				@Override
+				public void onLineRecognized(LineResult line) {
+					publishProgress(line);
+				}
+			};
+			
+			String text;
+			try {
+				text = reader.read(source, progress);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+			
+			Log.i(TAG, TessEnginePool.getInstance().toString());
+			Log.i(TAG, MetricsRegistry.getDefault().toString());
+			if(debug != null){
+				try {
+					MetricsRegistry.getDefault().writeSnapshot();
+				} catch (IOException e) {
+					Log.w(TAG, "Failed to write metrics", e);
+				}
+			}
+			
+			return text;
+		} finally {
+			if(debug != null){
+				reportLeaks(leakMark);
+			}
 		}
-		return pix;
 	}
 	
-	
 	/**
-	 * Get a Pix instance from our source data Uri
-	 * 
-	 * @param bmpUri The Uri of our BMP file
-	 * @return The resulting Pix or null
+	 * Log the images allocated by this task that were not
+	 * recycled, once the queued debug images are written.
 	 */
-	private Pix getPixFromUri(Uri bmpUri) {
-		BitmapFactory.Options opts = new BitmapFactory.Options();
-		opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
-
-		InputStream is;
+	private void reportLeaks(long leakMark) {
 		try {
-			is = context.getContentResolver().openInputStream(bmpUri);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			return null;
+			if(!DebugImageWriter.drain(DRAIN_TIMEOUT_MILLIS)){
+				Log.w(TAG, "Debug images still queued, they are reported too");
+			}
+			if(NativeLeakTracker.getLiveCount(leakMark) > 0){
+				Log.w(TAG, NativeLeakTracker.report(leakMark));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			NativeLeakTracker.end();
 		}
-
-		Bitmap bmp = BitmapFactory.decodeStream(is, null, opts);
-		Pix pix = ReadFile.readBitmap(bmp);
-		bmp.recycle();
-
-		return pix;
 	}
 
 }
@@ -0,0 +1,181 @@
+package com.flugtag.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.flugtag.ocr.ChainBenchmark;
+import com.flugtag.ocr.PreprocessChain;
+import com.flugtag.ocr.Preprocessor;
+import com.flugtag.ocr.ProfileBenchmark;
+import com.flugtag.regress.Measurements;
+import com.flugtag.regress.PipelineDriver;
+import com.flugtag.regress.RegressionHarness;
+import com.flugtag.tune.DetectorTuner;
+import com.flugtag.tune.LabeledReceipt;
+import com.flugtag.util.FileUtils;
+import com.flugtag.util.Paths;
+
+/**
+ * An AsyncTask that runs one of the offline tools over a corpus
+ * folder on the device, since they all need the native libraries.
+ * A progress dialog is shown while the tool runs, and the report
+ * is handed to the listener and logged.
+ */
+public class ToolTask extends AsyncTask<File, Void, String> {
+	private final String TAG = "ToolTask";
+
+	/** Search detector parameters and save the best to Paths.DETECTOR_PROFILE. */
+	public static final String TUNE_DETECTOR = "tune-detector";
+	/** Compare the recognition profiles. */
+	public static final String BENCH_PROFILES = "bench-profiles";
+	/** Compare the chains of a chain config file. */
+	public static final String BENCH_CHAINS = "bench-chains";
+	/** Read a regression corpus and record a replay of each receipt next to it. */
+	public static final String RECORD = "record";
+
+	/** The chain config file benchmarked when the corpus has none. */
+	public static final String CHAINS_FILE = "chains.txt";
+
+	/** The confidence a chain needs to be picked by the chain benchmark. */
+	private static final int MIN_CHAIN_CONFIDENCE = 70;
+
+	private Context context;
+	private ProgressDialog dialog;
+	private AsyncTaskCompleteListener<String> listener;
+	private final String tool;
+
+	/**
+	 * @param ctx The context to use when launching the progress dialog.
+	 * @param tool The tool to run, one of the constants of this class
+	 * @param listener Receives the report of the tool
+	 */
+	public ToolTask(Context ctx, String tool, AsyncTaskCompleteListener<String> listener){
+		this.context = ctx;
+		this.tool = tool;
+		this.listener = listener;
+	}
+
+	/**
+	 * Opens the progress dialog.
+	 *
+	 * @see android.os.AsyncTask#onPreExecute()
+	 */
+	@Override
+	protected void onPreExecute() {
+		super.onPreExecute();
+
+		dialog = new ProgressDialog(context);
+		dialog.setMessage("Running " + tool + "...");
+		dialog.show();
+	}
+
+	/**
+	 * Dismisses the progress dialog.
+	 *
+	 * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
+	 */
+	@Override
+	protected void onPostExecute(String result) {
+		super.onPostExecute(result);
+
+		dialog.dismiss();
+
+		listener.onTaskComplete(result);
+	}
+
+	/**
+	 * Runs the tool over the corpus folder.
+	 *
+	 * @see android.os.AsyncTask#doInBackground(Params[])
+	 */
+	@Override
+	protected String doInBackground(File... params) {
+		File corpus = params[0];
+		Log.i(TAG, "Running " + tool + " over " + corpus);
+
+		String report;
+		try {
+			if(TUNE_DETECTOR.equals(tool)){
+				report = tuneDetector(corpus);
+			}else if(BENCH_PROFILES.equals(tool)){
+				report = benchProfiles(corpus);
+			}else if(BENCH_CHAINS.equals(tool)){
+				report = benchChains(corpus);
+			}else if(RECORD.equals(tool)){
+				report = record(corpus);
+			}else{
+				report = "Unknown tool: " + tool;
+			}
+		} catch (IOException e) {
+			Log.e(TAG, tool + " failed", e);
+			report = tool + " failed: " + e.getMessage();
+		} catch (IllegalArgumentException e) {
+			Log.e(TAG, tool + " failed", e);
+			report = tool + " failed: " + e.getMessage();
+		}
+
+		Log.i(TAG, report);
+		return report;
+	}
+
+	private String tuneDetector(File corpus) throws IOException {
+		List<LabeledReceipt> receipts = LabeledReceipt.loadCorpus(corpus);
+		if(receipts.isEmpty()){
+			return "No labeled receipts in " + corpus;
+		}
+
+		DetectorTuner tuner = new DetectorTuner(receipts, Preprocessor.create(), new DetectorTuner.Parameters());
+		try {
+			DetectorTuner.Score best = tuner.coordinateDescent(DetectorTuner.DEFAULT_SPACE);
+			File file = new File(Paths.DETECTOR_PROFILE);
+			DetectorTuner.save(best, file);
+			return "Best of " + receipts.size() + " receipts, " + best + "\nSaved to " + file;
+		} finally {
+			tuner.recycle();
+		}
+	}
+
+	private String benchProfiles(File corpus) {
+		StringBuilder sb = new StringBuilder();
+		for(ProfileBenchmark.Result result : new ProfileBenchmark().run(FileUtils.listImages(corpus))){
+			sb.append(result).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private String benchChains(File corpus) throws IOException {
+		File file = new File(corpus, CHAINS_FILE);
+		if(!file.exists()){
+			file = new File(Paths.PREPROCESS_CHAIN);
+		}
+		List<PreprocessChain> chains = PreprocessChain.loadAll(file);
+
+		ChainBenchmark.Result[] results = new ChainBenchmark(chains).run(FileUtils.listImages(corpus));
+		StringBuilder sb = new StringBuilder();
+		for(ChainBenchmark.Result result : results){
+			sb.append(result).append('\n');
+		}
+		ChainBenchmark.Result fastest = ChainBenchmark.pickFastest(results, MIN_CHAIN_CONFIDENCE);
+		sb.append("Fastest with confidence >= ").append(MIN_CHAIN_CONFIDENCE).append(": ")
+			.append(fastest != null ? fastest.getChain().toString() : "none");
+		return sb.toString();
+	}
+
+	/**
+	 * The replays are pulled with the corpus and checked on a
+	 * computer by RegressionHarness.main().
+	 */
+	private String record(File corpus) throws IOException {
+		PipelineDriver driver = new PipelineDriver(Preprocessor.create(), corpus);
+		driver.loadSettings(corpus);
+		RegressionHarness harness = new RegressionHarness(driver, new RegressionHarness.Parameters());
+		Measurements measured = harness.run(corpus);
+		return "Recorded " + measured.getReceiptCount() + " receipts to " + corpus + "\n" + measured;
+	}
+}
@@ -0,0 +1,444 @@
+package com.flugtag.tune;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.flugtag.ocr.DetectorProfile;
+import com.flugtag.ocr.ImageDecoder;
+import com.flugtag.ocr.Preprocessor;
+import com.flugtag.ocr.TextRegions;
+import com.flugtag.ocr.TextSlicer;
+import com.googlecode.leptonica.android.Pix;
+
+/**
+ * Searches HydrogenTextDetector.Parameters for the profile
+ * that finds the labeled text lines of a corpus quickest and
+ * with the fewest regions.
+ *
+ * The corpus is decoded and preprocessed once and held in
+ * memory, then every candidate profile runs detection over all
+ * of it. A label is found when detected boxes cover enough of
+ * its area. The score rewards recall and charges for detection
+ * time and for regions beyond one per label, since every region
+ * costs a Tesseract call.
+ *
+ * Labels are compared before deskewing, so receipts in the
+ * corpus should be photographed close to level.
+ */
+public class DetectorTuner {
+	private static final String TAG = "DetectorTuner";
+
+	/**
+	 * How candidates are scored and how long to search.
+	 */
+	public static class Parameters {
+		/** The fraction of a label that detected boxes must cover. */
+		public float minCoverage;
+
+		/** Score lost per second of mean detection time. */
+		public float timeWeight;
+
+		/** Score lost per region beyond one per label. */
+		public float regionWeight;
+
+		/** The number of candidates random search tries. */
+		public int randomIterations;
+
+		/** The most passes coordinate descent makes over every dimension. */
+		public int descentRounds;
+
+		/** Seeds random search, for repeatable runs. */
+		public long seed;
+
+		public Parameters() {
+			minCoverage = 0.6f;
+			timeWeight = 0.5f;
+			regionWeight = 0.05f;
+			randomIterations = 50;
+			descentRounds = 3;
+			seed = 0;
+		}
+	}
+
+	/**
+	 * One tunable detector parameter and the values to try.
+	 */
+	public static class Dimension {
+		private final String name;
+		private final float min;
+		private final float max;
+		private final float step;
+		private final boolean integer;
+
+		/**
+		 * @param name The name of the detector parameter
+		 * @param min The smallest value to try
+		 * @param max The largest value to try
+		 * @param step The distance between values
+		 * @param integer True if the parameter is an int
+		 */
+		public Dimension(String name, float min, float max, float step, boolean integer) {
+			if(!DetectorProfile.isTunable(name)){
+				throw new IllegalArgumentException("Unknown detector parameter: " + name);
+			}
+			this.name = name;
+			this.min = min;
+			this.max = max;
+			this.step = step;
+			this.integer = integer;
+		}
+
+		/**
+		 * @return the name of the detector parameter
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return every value from min to max by step, as property values
+		 */
+		public String[] values() {
+			int count = (int) Math.floor((max - min) / step + 1e-3) + 1;
+			String[] values = new String[count];
+			for(int i=0;i<count;i++){
+				values[i] = format(min + i * step);
+			}
+			return values;
+		}
+
+		String random(Random random) {
+			String[] values = values();
+			return values[random.nextInt(values.length)];
+		}
+
+		private String format(float value) {
+			return integer ? Integer.toString(Math.round(value)) : Float.toString(value);
+		}
+	}
+
+	/** The parameters that most change what is detected and how fast. */
+	public static final Dimension[] DEFAULT_SPACE = {
+		new Dimension("edge_tile_x", 16, 64, 16, true),
+		new Dimension("edge_tile_y", 16, 128, 16, true),
+		new Dimension("edge_thresh", 16, 96, 16, true),
+		new Dimension("edge_avg_thresh", 1, 8, 1, true),
+		new Dimension("skew_sweep_range", 5, 30, 5, false),
+		new Dimension("skew_sweep_reduction", 4, 8, 4, true),
+		new Dimension("single_min_area", 2, 16, 2, true),
+		new Dimension("single_min_density", 0.1f, 0.4f, 0.05f, false),
+		new Dimension("pair_h_dist_ratio", 1, 4, 0.5f, false),
+		new Dimension("pair_v_dist_ratio", 0.1f, 0.5f, 0.05f, false),
+		new Dimension("cluster_width_spacing", 1, 4, 1, true),
+		new Dimension("cluster_min_blobs", 2, 8, 1, true),
+		new Dimension("cluster_min_aspect", 1, 4, 0.5f, false),
+		new Dimension("cluster_min_fdr", 1, 4, 0.5f, false),
+		new Dimension("cluster_min_edge", 8, 64, 8, true),
+	};
+
+	/**
+	 * The result of running one profile over the corpus.
+	 */
+	public static class Score {
+		private final Properties profile;
+		private final float recall;
+		private final long meanMillis;
+		private final float regionsPerLabel;
+		private final float value;
+
+		Score(Properties profile, float recall, long meanMillis, float regionsPerLabel, float value) {
+			this.profile = profile;
+			this.recall = recall;
+			this.meanMillis = meanMillis;
+			this.regionsPerLabel = regionsPerLabel;
+			this.value = value;
+		}
+
+		/**
+		 * @return the detector parameters that were scored
+		 */
+		public Properties getProfile() {
+			return profile;
+		}
+
+		/**
+		 * @return the fraction of labels found, 0 - 1
+		 */
+		public float getRecall() {
+			return recall;
+		}
+
+		/**
+		 * @return the mean detection time per receipt in milliseconds
+		 */
+		public long getMeanMillis() {
+			return meanMillis;
+		}
+
+		/**
+		 * @return the number of regions detected per label
+		 */
+		public float getRegionsPerLabel() {
+			return regionsPerLabel;
+		}
+
+		/**
+		 * @return the combined score, higher is better
+		 */
+		public float getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return MessageFormat.format(
+					"score {0,number,0.000}: recall {1,number,0.000}, {2} ms, {3,number,0.00} regions per label",
+					value,
+					recall,
+					meanMillis,
+					regionsPerLabel);
+		}
+	}
+
+	/**
+	 * A preprocessed corpus image and its labels in pixels.
+	 */
+	private static class Sample {
+		final Pix page;
+		final Rect[] labels;
+
+		Sample(Pix page, Rect[] labels) {
+			this.page = page;
+			this.labels = labels;
+		}
+	}
+
+	private final Parameters params;
+	private final List<Sample> samples = new ArrayList<Sample>();
+	private final TextSlicer slicer = new TextSlicer(false);
+	private final Properties defaults;
+	private int labelCount;
+
+	/**
+	 * Decode and preprocess the corpus.
+	 *
+	 * @param corpus The labeled receipts
+	 * @param preprocessor Prepares the images like the app does
+	 * @param params How candidates are scored
+	 */
+	public DetectorTuner(List<LabeledReceipt> corpus, Preprocessor preprocessor, Parameters params) {
+		this.params = params;
+		this.defaults = slicer.getProfile();
+
+		for(LabeledReceipt receipt : corpus){
+			Pix pix;
+			try {
+				pix = ImageDecoder.decodeGray(receipt.getImage(), preprocessor.getMaxImageArea());
+			} catch (IOException e) {
+				Log.w(TAG, "Skipping " + receipt.getImage(), e);
+				continue;
+			}
+			if(pix == null){
+				Log.w(TAG, "Skipping " + receipt.getImage() + ", could not decode");
+				continue;
+			}
+			Pix page = preprocessor.process(pix);
+
+			float[][] fractions = receipt.getLabels();
+			Rect[] labels = new Rect[fractions.length];
+			int width = page.getWidth();
+			int height = page.getHeight();
+			for(int i=0;i<labels.length;i++){
+				float[] f = fractions[i];
+				labels[i] = new Rect(
+						Math.round(f[0] * width), Math.round(f[1] * height),
+						Math.round(f[2] * width), Math.round(f[3] * height));
+			}
+
+			samples.add(new Sample(page, labels));
+			labelCount += labels.length;
+		}
+	}
+
+	/**
+	 * Run detection over the corpus with a profile.
+	 *
+	 * @param candidate Detector parameters to change from the defaults
+	 * @return The score of the profile
+	 */
+	public Score evaluate(Properties candidate) {
+		Properties profile = new Properties();
+		profile.putAll(defaults);
+		profile.putAll(candidate);
+		slicer.setProfile(profile);
+
+		int found = 0;
+		int regionCount = 0;
+		long totalMillis = 0;
+		for(Sample sample : samples){
+			long startMillis = System.currentTimeMillis();
+			TextRegions regions = slicer.detect(sample.page.clone());
+			totalMillis += System.currentTimeMillis() - startMillis;
+			Rect[] boxes = regions.getBoxes();
+			regions.recycle();
+
+			regionCount += boxes.length;
+			for(Rect label : sample.labels){
+				if(coverage(label, boxes) >= params.minCoverage){
+					found++;
+				}
+			}
+		}
+
+		int n = Math.max(1, samples.size());
+		int labels = Math.max(1, labelCount);
+		float recall = found / (float) labels;
+		long meanMillis = totalMillis / n;
+		float regionsPerLabel = regionCount / (float) labels;
+		float value = recall
+				- params.timeWeight * meanMillis / 1000f
+				- params.regionWeight * Math.max(0, regionsPerLabel - 1);
+
+		return new Score(profile, recall, meanMillis, regionsPerLabel, value);
+	}
+
+	/**
+	 * Try random points of the space.
+	 *
+	 * @param space The parameters to vary
+	 * @return The best score, the defaults included
+	 */
+	public Score randomSearch(Dimension[] space) {
+		Random random = new Random(params.seed);
+		Score best = evaluate(new Properties());
+		for(int i=0;i<params.randomIterations;i++){
+			Properties candidate = new Properties();
+			for(Dimension dimension : space){
+				candidate.setProperty(dimension.getName(), dimension.random(random));
+			}
+			best = better(best, evaluate(candidate));
+		}
+		return best;
+	}
+
+	/**
+	 * Try every combination of values. Only practical
+	 * for two or three dimensions at a time.
+	 *
+	 * @param space The parameters to vary
+	 * @return The best score, the defaults included
+	 */
+	public Score gridSearch(Dimension[] space) {
+		String[][] values = new String[space.length][];
+		for(int d=0;d<space.length;d++){
+			values[d] = space[d].values();
+		}
+
+		Score best = evaluate(new Properties());
+		int[] index = new int[space.length];
+		while(true){
+			Properties candidate = new Properties();
+			for(int d=0;d<space.length;d++){
+				candidate.setProperty(space[d].getName(), values[d][index[d]]);
+			}
+			best = better(best, evaluate(candidate));
+
+			// Advance like an odometer
+			int d = 0;
+			while(d < space.length && ++index[d] == values[d].length){
+				index[d] = 0;
+				d++;
+			}
+			if(d == space.length){
+				return best;
+			}
+		}
+	}
+
+	/**
+	 * Starting from the defaults, try every value of one
+	 * parameter at a time and keep the best, until a pass
+	 * over every parameter improves nothing.
+	 *
+	 * @param space The parameters to vary
+	 * @return The best score, the defaults included
+	 */
+	public Score coordinateDescent(Dimension[] space) {
+		Score best = evaluate(new Properties());
+		for(int round=0;round<params.descentRounds;round++){
+			boolean improved = false;
+			for(Dimension dimension : space){
+				for(String value : dimension.values()){
+					Properties candidate = new Properties();
+					candidate.putAll(best.getProfile());
+					candidate.setProperty(dimension.getName(), value);
+
+					Score score = evaluate(candidate);
+					if(score.getValue() > best.getValue()){
+						best = score;
+						improved = true;
+					}
+				}
+			}
+			Log.i(TAG, "Round " + (round + 1) + ": " + best);
+			if(!improved){
+				break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Write a profile where TextSlicer.create() picks it up.
+	 *
+	 * @param score The profile to write
+	 * @param file The profile file, usually Paths.DETECTOR_PROFILE
+	 * @throws IOException
+	 */
+	public static void save(Score score, File file) throws IOException {
+		DetectorProfile.save(score.getProfile(), file, "DetectorTuner " + score);
+	}
+
+	/**
+	 * Free the preprocessed corpus and the detector.
+	 */
+	public void recycle() {
+		for(Sample sample : samples){
+			sample.page.recycle();
+		}
+		samples.clear();
+		slicer.release();
+	}
+
+	private static Score better(Score best, Score candidate) {
+		return candidate.getValue() > best.getValue() ? candidate : best;
+	}
+
+	/**
+	 * @return the fraction of the label covered by the boxes, overlaps counted once per box
+	 */
+	private static float coverage(Rect label, Rect[] boxes) {
+		long area = (long) label.width() * label.height();
+		if(area <= 0){
+			return 0;
+		}
+
+		long covered = 0;
+		for(Rect box : boxes){
+			int w = Math.min(label.right, box.right) - Math.max(label.left, box.left);
+			int h = Math.min(label.bottom, box.bottom) - Math.max(label.top, box.top);
+			if(w > 0 && h > 0){
+				covered += (long) w * h;
+			}
+		}
+		return Math.min(1f, covered / (float) area);
+	}
+}
@@ -0,0 +1,124 @@
+package com.flugtag.tune;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.flugtag.util.FileUtils;
+
+/**
+ * A receipt image with the true bounds of its text lines.
+ *
+ * The labels of <code>receipt.jpg</code> are read from
+ * <code>receipt.boxes</code> next to it, one line per text
+ * line: <code>left top right bottom</code> as fractions of the
+ * image width and height. Fractions keep the labels valid at
+ * whatever size the image is decoded and scaled to. Lines
+ * starting with # are comments.
+ */
+public class LabeledReceipt {
+
+	/** The file extension of label files. */
+	public static final String LABEL_EXTENSION = ".boxes";
+
+	private final File image;
+	private final float[][] labels;
+
+	/**
+	 * @param image The encoded receipt image
+	 * @param labels The left, top, right and bottom fractions of every text line
+	 */
+	public LabeledReceipt(File image, float[][] labels) {
+		this.image = image;
+		this.labels = labels;
+	}
+
+	/**
+	 * Read the labels of an image.
+	 *
+	 * @param image The encoded receipt image
+	 * @return The labeled receipt
+	 * @throws IOException if the label file is missing or invalid
+	 */
+	public static LabeledReceipt load(File image) throws IOException {
+		File file = labelFile(image);
+		List<float[]> labels = new ArrayList<float[]>();
+
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			int lineNumber = 0;
+			String line;
+			while((line = reader.readLine()) != null){
+				lineNumber++;
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#")){
+					continue;
+				}
+
+				String[] tokens = line.split("\\s+");
+				if(tokens.length != 4){
+					throw new IOException(file + ":" + lineNumber + ": expected left top right bottom");
+				}
+				float[] box = new float[4];
+				try {
+					for(int i=0;i<4;i++){
+						box[i] = Float.parseFloat(tokens[i]);
+					}
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+				}
+				labels.add(box);
+			}
+		} finally {
+			reader.close();
+		}
+
+		return new LabeledReceipt(image, labels.toArray(new float[labels.size()][]));
+	}
+
+	/**
+	 * Read every labeled receipt of a folder. Images
+	 * without a label file are skipped.
+	 *
+	 * @param dir The corpus folder
+	 * @return The labeled receipts in name order
+	 * @throws IOException if a label file is invalid
+	 */
+	public static List<LabeledReceipt> loadCorpus(File dir) throws IOException {
+		List<LabeledReceipt> corpus = new ArrayList<LabeledReceipt>();
+		for(File image : FileUtils.listImages(dir)){
+			if(labelFile(image).exists()){
+				corpus.add(load(image));
+			}
+		}
+		return corpus;
+	}
+
+	private static File labelFile(File image) {
+		String name = image.getName();
+		int dot = name.lastIndexOf('.');
+		if(dot > 0){
+			name = name.substring(0, dot);
+		}
+		return new File(image.getParentFile(), name + LABEL_EXTENSION);
+	}
+
+	/**
+	 * @return the encoded receipt image
+	 */
+	public File getImage() {
+		return image;
+	}
+
+	/**
+	 * @return the left, top, right and bottom fractions of every text line
+	 */
+	public float[][] getLabels() {
+		return labels;
+	}
+}
@@ -1,8 +1,11 @@
 package com.flugtag.util;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 public class FileUtils {
 	
@@ -27,4 +30,26 @@ public class FileUtils {
 	        if (os != null) os.close();
 	    }
 	  }
-}
\ No newline at end of file
+	
+	/**
+	 * Find the receipt images of a folder. Like ReadFile.readFiles(),
+	 * only BMP and JPEG files are read.
+	 * 
+	 * @param dir The folder to search
+	 * @return The images in name order
+	 */
+	public static File[] listImages(File dir) {
+		File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				String lower = name.toLowerCase();
+				return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".bmp");
+			}
+		});
+		if(files == null){
+			return new File[0];
+		}
+		Arrays.sort(files);
+		return files;
+	}
+}
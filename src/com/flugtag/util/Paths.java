@@ -5,6 +5,9 @@ public class Paths {
 	public static String OCR_DATA = "/mnt/sdcard/";
 	public static String EXT_TESSDATA = OCR_DATA + "tessdata";
 	public static String INT_TESSDATA = "tessdata";
+	public static String METRICS_FILE = OCR_DATA + "flugtag-metrics.csv";
+	public static String PREPROCESS_CHAIN = OCR_DATA + "flugtag-chain.txt";
+	public static String DETECTOR_PROFILE = OCR_DATA + "flugtag-detector.properties";
 	
 	/**
 	 * Not currently instantiable, until
@@ -0,0 +1,46 @@
+package com.flugtag.util;
+
+import java.util.Arrays;
+
+public class Percentiles {
+
+	/**
+	 * Get a percentile of some samples using the nearest rank method.
+	 * The samples are sorted in place.
+	 * 
+	 * @param samples The samples, may be empty
+	 * @param count The number of samples at the start of the array to use
+	 * @param percentile The percentile to get, 0 - 100
+	 * @return the value at the percentile or 0 if there are no samples
+	 */
+	public static long percentile(long[] samples, int count, double percentile) {
+		if(count == 0){
+			return 0;
+		}
+		Arrays.sort(samples, 0, count);
+		return sortedPercentile(samples, count, percentile);
+	}
+
+	/**
+	 * Get a percentile of some already sorted samples using
+	 * the nearest rank method.
+	 * 
+	 * @param sorted The samples in ascending order
+	 * @param count The number of samples at the start of the array to use
+	 * @param percentile The percentile to get, 0 - 100
+	 * @return the value at the percentile or 0 if there are no samples
+	 */
+	public static long sortedPercentile(long[] sorted, int count, double percentile) {
+		if(count == 0){
+			return 0;
+		}
+		int rank = (int) Math.ceil(percentile / 100.0 * count);
+		rank = Math.max(1, Math.min(count, rank));
+		return sorted[rank - 1];
+	}
+
+	/**
+	 * Not instantiable, there are only static methods here.
+	 */
+	private Percentiles(){};
+}
@@ -34,6 +34,8 @@ public class HydrogenTextDetector {
 
     private Parameters mParams;
 
+    private boolean mReleased;
+
     public HydrogenTextDetector() {
         mNative = nativeConstructor();
 
@@ -45,12 +47,16 @@ public class HydrogenTextDetector {
         // TODO(alanv): Set up native buffers
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        try {
+    /**
+     * Frees the native detector. The detector may not be used after calling
+     * this method. There is no finalizer, so a detector that is never released
+     * leaks its native memory.
+     */
+    public synchronized void release() {
+        if (!mReleased) {
             nativeDestructor(mNative);
-        } finally {
-            super.finalize();
+
+            mReleased = true;
         }
     }
 
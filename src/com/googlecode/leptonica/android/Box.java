@@ -54,6 +54,8 @@ public class Box {
     Box(int nativeBox) {
         mNativeBox = nativeBox;
         mRecycled = false;
+
+        NativeLeakTracker.allocated(this);
     }
 
     /**
@@ -78,6 +80,8 @@ public class Box {
         
         mNativeBox = nativeBox;
         mRecycled = false;
+
+        NativeLeakTracker.allocated(this);
     }
     
     /**
@@ -148,21 +152,18 @@ public class Box {
     }
 
     /**
-     * Releases resources and frees any memory associated with this Box.
+     * Releases resources and frees any memory associated with this Box. Box
+     * has no finalizer, so a Box that is never recycled leaks its native
+     * memory.
      */
     public void recycle() {
         if (!mRecycled) {
             nativeDestroy(mNativeBox);
 
             mRecycled = true;
-        }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        recycle();
 
-        super.finalize();
+            NativeLeakTracker.released(this);
+        }
     }
 
     // ***************
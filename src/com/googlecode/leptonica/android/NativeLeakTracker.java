@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.leptonica.android;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records where every live native wrapper was allocated, so objects that are
+ * never recycled can be found. Pix, Pixa and Box have no finalizers, so an
+ * object that is not recycled leaks its native memory for good.
+ * <p>
+ * Tracking takes a stack trace per allocation and is off by default. A debug
+ * run calls begin() before the objects of interest are created, then reports
+ * the objects allocated since its mark once they should all have been
+ * recycled, and calls end(). Tracking stays on while any run has begun, so
+ * runs that overlap don't turn it off under each other.
+ */
+public class NativeLeakTracker {
+    private static volatile boolean sEnabled = false;
+
+    private static final Map<Object, Allocation> sLive = new IdentityHashMap<Object, Allocation>();
+
+    /** Guarded by sLive. */
+    private static int sUsers = 0;
+    private static long sSequence = 0;
+
+    /**
+     * Turns allocation tracking on until the matching end().
+     *
+     * @return a mark for the reports of objects allocated from now on
+     */
+    public static long begin() {
+        synchronized (sLive) {
+            sUsers++;
+            sEnabled = true;
+
+            return sSequence;
+        }
+    }
+
+    /**
+     * Ends a run started with begin(). Tracking is turned off and every
+     * tracked object forgotten when no run is left.
+     */
+    public static void end() {
+        synchronized (sLive) {
+            if (sUsers == 0) {
+                throw new IllegalStateException("end() without begin()");
+            }
+
+            if (--sUsers == 0) {
+                sEnabled = false;
+                sLive.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns whether allocations are being recorded.
+     *
+     * @return <code>true</code> if allocations are being recorded
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Records the allocation of a native wrapper, with the current stack.
+     *
+     * @param wrapper The Pix, Pixa or Box that now owns native memory.
+     */
+    static void allocated(Object wrapper) {
+        if (!sEnabled) {
+            return;
+        }
+
+        String message = wrapper.getClass().getSimpleName() + " allocated here";
+
+        synchronized (sLive) {
+            if (sEnabled) {
+                sLive.put(wrapper, new Allocation(message, sSequence++));
+            }
+        }
+    }
+
+    /**
+     * Records the release of a native wrapper's memory.
+     *
+     * @param wrapper The Pix, Pixa or Box that was recycled.
+     */
+    static void released(Object wrapper) {
+        if (!sEnabled) {
+            return;
+        }
+
+        synchronized (sLive) {
+            sLive.remove(wrapper);
+        }
+    }
+
+    /**
+     * Stops tracking a Pix kept idle by a pool, which is expected to outlive
+     * every run.
+     *
+     * @param pix The Pix put back into the pool.
+     */
+    public static void pooled(Pix pix) {
+        released(pix);
+    }
+
+    /**
+     * Tracks a Pix taken out of a pool again, as if it had just been
+     * allocated.
+     *
+     * @param pix The Pix taken from the pool.
+     */
+    public static void reused(Pix pix) {
+        allocated(pix);
+    }
+
+    /**
+     * Returns the number of tracked objects that have not been recycled.
+     *
+     * @return the number of live tracked objects
+     */
+    public static int getLiveCount() {
+        return getLiveCount(0);
+    }
+
+    /**
+     * Returns the number of tracked objects allocated since a mark that have
+     * not been recycled.
+     *
+     * @param mark A mark returned by begin().
+     * @return the number of live tracked objects allocated since the mark
+     */
+    public static int getLiveCount(long mark) {
+        return getLiveAllocations(mark).size();
+    }
+
+    /**
+     * Returns the allocation stack of every tracked object that has not been
+     * recycled.
+     *
+     * @return the allocation stacks of the live tracked objects
+     */
+    public static List<Throwable> getLiveAllocations() {
+        return getLiveAllocations(0);
+    }
+
+    /**
+     * Returns the allocation stack of every tracked object allocated since a
+     * mark that has not been recycled.
+     *
+     * @param mark A mark returned by begin().
+     * @return the allocation stacks of the live tracked objects
+     */
+    public static List<Throwable> getLiveAllocations(long mark) {
+        List<Throwable> live = new ArrayList<Throwable>();
+
+        synchronized (sLive) {
+            for (Allocation allocation : sLive.values()) {
+                if (allocation.mSequence >= mark) {
+                    live.add(allocation);
+                }
+            }
+        }
+
+        return live;
+    }
+
+    /**
+     * Describes every tracked object that has not been recycled and where it
+     * was allocated.
+     *
+     * @return a report of the live tracked objects
+     */
+    public static String report() {
+        return report(0);
+    }
+
+    /**
+     * Describes every tracked object allocated since a mark that has not been
+     * recycled and where it was allocated.
+     *
+     * @param mark A mark returned by begin().
+     * @return a report of the live tracked objects
+     */
+    public static String report(long mark) {
+        List<Throwable> live = getLiveAllocations(mark);
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+
+        writer.println(live.size() + " native objects not recycled");
+
+        for (Throwable stack : live) {
+            stack.printStackTrace(writer);
+        }
+
+        writer.flush();
+
+        return out.toString();
+    }
+
+    /**
+     * The stack of an allocation and its place in the order of allocations.
+     */
+    private static class Allocation extends Throwable {
+        private static final long serialVersionUID = 1L;
+
+        final long mSequence;
+
+        Allocation(String message, long sequence) {
+            super(message);
+
+            mSequence = sequence;
+        }
+    }
+
+    /**
+     * Not instantiable, there are only static methods here.
+     */
+    private NativeLeakTracker() {
+    }
+}
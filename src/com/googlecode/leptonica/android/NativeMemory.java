@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.leptonica.android;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the live Pix and Pixa wrappers and the native bytes the Pix hold,
+ * and keeps the high-water mark of those bytes. A task that wants its own
+ * high-water mark starts a Watermark, so tasks running at the same time don't
+ * disturb each other.
+ * <p>
+ * The bytes of a Pix are width * height * depth / 8, the size of its raster
+ * without row padding. Clones share a raster but are counted separately, so
+ * the figures are an upper bound. The bytes held by a Pixa are counted only
+ * through the Pix taken out of it.
+ */
+public class NativeMemory {
+    private static final AtomicInteger sLivePix = new AtomicInteger();
+    private static final AtomicInteger sLivePixa = new AtomicInteger();
+    private static final AtomicLong sLiveBytes = new AtomicLong();
+    private static final AtomicLong sPeakBytes = new AtomicLong();
+    private static final CopyOnWriteArrayList<Watermark> sWatermarks =
+            new CopyOnWriteArrayList<Watermark>();
+
+    /**
+     * Records a new Pix.
+     *
+     * @param bytes The size of its raster.
+     */
+    static void pixAllocated(long bytes) {
+        sLivePix.incrementAndGet();
+
+        long live = sLiveBytes.addAndGet(bytes);
+        long peak = sPeakBytes.get();
+
+        while (live > peak && !sPeakBytes.compareAndSet(peak, live)) {
+            peak = sPeakBytes.get();
+        }
+
+        for (Watermark watermark : sWatermarks) {
+            watermark.update(live);
+        }
+    }
+
+    /**
+     * Records a recycled Pix.
+     *
+     * @param bytes The size of its raster, as passed to pixAllocated().
+     */
+    static void pixReleased(long bytes) {
+        sLivePix.decrementAndGet();
+        sLiveBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Records a new Pixa.
+     */
+    static void pixaAllocated() {
+        sLivePixa.incrementAndGet();
+    }
+
+    /**
+     * Records a recycled Pixa.
+     */
+    static void pixaReleased() {
+        sLivePixa.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of Pix that have not been recycled.
+     *
+     * @return the number of live Pix
+     */
+    public static int getLivePixCount() {
+        return sLivePix.get();
+    }
+
+    /**
+     * Returns the number of Pixa that have not been recycled.
+     *
+     * @return the number of live Pixa
+     */
+    public static int getLivePixaCount() {
+        return sLivePixa.get();
+    }
+
+    /**
+     * Returns the raster bytes held by Pix that have not been recycled.
+     *
+     * @return the live raster bytes
+     */
+    public static long getLiveBytes() {
+        return sLiveBytes.get();
+    }
+
+    /**
+     * Returns the most raster bytes held at once since the process started.
+     *
+     * @return the peak raster bytes
+     */
+    public static long getPeakBytes() {
+        return sPeakBytes.get();
+    }
+
+    /**
+     * Starts a high-water mark at the bytes held now, typically at the start
+     * of a task. Stop it when the task is done.
+     *
+     * @return the running mark
+     */
+    public static Watermark startWatermark() {
+        Watermark watermark = new Watermark(sLiveBytes.get());
+        sWatermarks.add(watermark);
+        return watermark;
+    }
+
+    /**
+     * Returns a one line summary of native memory use.
+     *
+     * @return a summary of native memory use
+     */
+    public static String summary() {
+        return "Native: " + getLivePixCount() + " pix, " + getLivePixaCount() + " pixa, "
+                + getLiveBytes() / 1024 + " KB live, " + getPeakBytes() / 1024 + " KB peak";
+    }
+
+    /**
+     * Not instantiable, there are only static methods here.
+     */
+    private NativeMemory() {
+    }
+
+    /**
+     * The most raster bytes held at once while one task ran. Bytes held by
+     * anything else running at the time are included, as they were held too.
+     */
+    public static class Watermark {
+        private final long mStartBytes;
+        private final AtomicLong mPeakBytes;
+
+        private Watermark(long startBytes) {
+            mStartBytes = startBytes;
+            mPeakBytes = new AtomicLong(startBytes);
+        }
+
+        private void update(long live) {
+            long peak = mPeakBytes.get();
+
+            while (live > peak && !mPeakBytes.compareAndSet(peak, live)) {
+                peak = mPeakBytes.get();
+            }
+        }
+
+        /**
+         * Returns the raster bytes held when the mark was started.
+         *
+         * @return the live raster bytes at the start
+         */
+        public long getStartBytes() {
+            return mStartBytes;
+        }
+
+        /**
+         * Returns the most raster bytes held at once since the mark was started.
+         *
+         * @return the peak raster bytes
+         */
+        public long getPeakBytes() {
+            return mPeakBytes.get();
+        }
+
+        /**
+         * Stops following allocations. The peak is kept.
+         *
+         * @return the peak raster bytes
+         */
+        public long stop() {
+            sWatermarks.remove(this);
+            return mPeakBytes.get();
+        }
+    }
+}
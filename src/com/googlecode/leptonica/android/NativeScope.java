@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.leptonica.android;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+
+/**
+ * Owns the intermediate Pix, Pixa and Box objects of a computation and
+ * recycles all of them when closed, so none are leaked on an early return or
+ * an exception. Close the scope in a finally block:
+ *
+ * <pre>
+ * NativeScope scope = new NativeScope();
+ * try {
+ *     Pix gray = scope.add(Convert.convertTo8(pix));
+ *     Pix binary = scope.add(Binarize.otsuAdaptiveThreshold(gray));
+ *     return scope.keep(binary);
+ * } finally {
+ *     scope.close();
+ * }
+ * </pre>
+ *
+ * A scope is not thread-safe.
+ */
+public class NativeScope implements Closeable {
+    private final ArrayList<Object> mOwned = new ArrayList<Object>();
+
+    private boolean mClosed = false;
+
+    /**
+     * Takes ownership of a Pix.
+     *
+     * @param pix The Pix to recycle when this scope closes, may be
+     *            <code>null</code>.
+     * @return the Pix
+     */
+    public Pix add(Pix pix) {
+        own(pix);
+
+        return pix;
+    }
+
+    /**
+     * Takes ownership of a Pixa.
+     *
+     * @param pixa The Pixa to recycle when this scope closes, may be
+     *            <code>null</code>.
+     * @return the Pixa
+     */
+    public Pixa add(Pixa pixa) {
+        own(pixa);
+
+        return pixa;
+    }
+
+    /**
+     * Takes ownership of a Box.
+     *
+     * @param box The Box to recycle when this scope closes, may be
+     *            <code>null</code>.
+     * @return the Box
+     */
+    public Box add(Box box) {
+        own(box);
+
+        return box;
+    }
+
+    /**
+     * Gives up ownership of a Pix, so it outlives this scope. Use this for
+     * the result of the computation.
+     *
+     * @param pix A Pix added to this scope.
+     * @return the Pix
+     */
+    public Pix keep(Pix pix) {
+        disown(pix);
+
+        return pix;
+    }
+
+    /**
+     * Gives up ownership of a Pixa, so it outlives this scope.
+     *
+     * @param pixa A Pixa added to this scope.
+     * @return the Pixa
+     */
+    public Pixa keep(Pixa pixa) {
+        disown(pixa);
+
+        return pixa;
+    }
+
+    /**
+     * Recycles every owned object, newest first. Closing twice has no effect.
+     */
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+
+        mClosed = true;
+
+        for (int i = mOwned.size() - 1; i >= 0; i--) {
+            Object owned = mOwned.get(i);
+
+            if (owned instanceof Pix) {
+                ((Pix) owned).recycle();
+            } else if (owned instanceof Pixa) {
+                ((Pixa) owned).recycle();
+            } else if (owned instanceof Box) {
+                ((Box) owned).recycle();
+            }
+        }
+
+        mOwned.clear();
+    }
+
+    private void own(Object object) {
+        if (mClosed) {
+            throw new IllegalStateException("Scope is closed");
+        }
+
+        if (object != null) {
+            mOwned.add(object);
+        }
+    }
+
+    private void disown(Object object) {
+        for (int i = mOwned.size() - 1; i >= 0; i--) {
+            if (mOwned.get(i) == object) {
+                mOwned.remove(i);
+                return;
+            }
+        }
+    }
+}
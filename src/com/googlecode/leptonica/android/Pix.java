@@ -42,16 +42,26 @@ public class Pix {
 
     private boolean mRecycled;
 
+    /** Native dimensions never change, so they are read once. See INDEX_*. */
+    private int[] mDimensions;
+
+    /** The raster size counted by NativeMemory. */
+    private final long mBytes;
+
     /**
      * Creates a new Pix wrapper for the specified native PIX object. Never call
-     * this twice on the same native pointer, because finalize() will attempt to
-     * free native memory twice.
+     * this twice on the same native pointer, because recycling both wrappers
+     * would free native memory twice.
      *
      * @param nativePix A pointer to the native PIX object.
      */
     public Pix(int nativePix) {
         mNativePix = nativePix;
         mRecycled = false;
+        mBytes = rasterBytes();
+
+        NativeMemory.pixAllocated(mBytes);
+        NativeLeakTracker.allocated(this);
     }
     
     public Pix(int width, int height, int depth) {
@@ -64,6 +74,11 @@ public class Pix {
 
         mNativePix = nativeCreatePix(width, height, depth);
         mRecycled = false;
+        mDimensions = new int[] { width, height, depth, 0 };
+        mBytes = rasterBytes();
+
+        NativeMemory.pixAllocated(mBytes);
+        NativeLeakTracker.allocated(this);
     }
 
     /**
@@ -83,15 +98,66 @@ public class Pix {
      * @return a copy of this PIX object's raw data
      */
     public byte[] getData() {
-        int size = nativeGetDataSize(mNativePix);
+        byte[] buffer = new byte[getDataSize()];
+
+        getData(buffer);
+
+        return buffer;
+    }
 
-        byte[] buffer = new byte[size];
+    /**
+     * Copies the raw bytes of the native PIX object into an existing array, so
+     * one array can be reused for many images of the same size.
+     *
+     * @param buffer The array to fill. Must be at least getDataSize() bytes.
+     */
+    public void getData(byte[] buffer) {
+        if (buffer == null || buffer.length < getDataSize()) {
+            throw new IllegalArgumentException("Data array must be large enough to hold image bytes");
+        }
 
         if (!nativeGetData(mNativePix, buffer)) {
             throw new RuntimeException("native getData failed");
         }
+    }
 
-        return buffer;
+    /**
+     * Returns the number of bytes of raw data held by this Pix.
+     *
+     * @return the size of this PIX object's raw data
+     */
+    public int getDataSize() {
+        return nativeGetDataSize(mNativePix);
+    }
+
+    /**
+     * Returns a copy of this image's raster for bulk pixel access. One native
+     * call copies every pixel, instead of one call per getPixel().
+     *
+     * @return a copy of this image's raster
+     */
+    public PixRaster getRaster() {
+        return getRaster(null);
+    }
+
+    /**
+     * Returns a copy of this image's raster, reusing an array when it is large
+     * enough.
+     *
+     * @param buffer An array to copy into, may be <code>null</code>. Use
+     *            getRaster().getBuffer().array() to reuse a previous raster.
+     * @return a copy of this image's raster
+     */
+    public PixRaster getRaster(byte[] buffer) {
+        int size = getDataSize();
+
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+        }
+
+        getData(buffer);
+
+        return new PixRaster(buffer, getWidth(), getHeight(), getDepth());
     }
 
     /**
@@ -166,20 +232,19 @@ public class Pix {
     /**
      * Releases resources and frees any memory associated with this Pix. You may
      * not modify or access the pix after calling this method.
+     * <p>
+     * Pix has no finalizer, so a Pix that is never recycled leaks its native
+     * memory. See NativeScope and NativeLeakTracker.
      */
     public void recycle() {
         if (!mRecycled) {
             nativeDestroy(mNativePix);
 
             mRecycled = true;
-        }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        recycle();
 
-        super.finalize();
+            NativeMemory.pixReleased(mBytes);
+            NativeLeakTracker.released(this);
+        }
     }
 
     /**
@@ -219,7 +284,7 @@ public class Pix {
      * @return the width of this Pix
      */
     public int getWidth() {
-        return nativeGetWidth(mNativePix);
+        return dimensions()[INDEX_W];
     }
 
     /**
@@ -228,7 +293,7 @@ public class Pix {
      * @return the height of this Pix
      */
     public int getHeight() {
-        return nativeGetHeight(mNativePix);
+        return dimensions()[INDEX_H];
     }
 
     /**
@@ -237,9 +302,31 @@ public class Pix {
      * @return the depth of this Pix
      */
     public int getDepth() {
-        return nativeGetDepth(mNativePix);
+        return dimensions()[INDEX_D];
     }
     
+    private long rasterBytes() {
+        int[] dimensions = dimensions();
+
+        return (long) dimensions[INDEX_W] * dimensions[INDEX_H] * dimensions[INDEX_D] / 8;
+    }
+
+    private int[] dimensions() {
+        if (mDimensions == null) {
+            int[] dimensions = new int[4];
+
+            if (!nativeGetDimensions(mNativePix, dimensions)) {
+                dimensions[INDEX_W] = nativeGetWidth(mNativePix);
+                dimensions[INDEX_H] = nativeGetHeight(mNativePix);
+                dimensions[INDEX_D] = nativeGetDepth(mNativePix);
+            }
+
+            mDimensions = dimensions;
+        }
+
+        return mDimensions;
+    }
+
     /**
      * Returns the {@link android.graphics.Color} at the specified location.
      *
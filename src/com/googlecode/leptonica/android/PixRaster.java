@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.leptonica.android;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The raster of a Pix held in Java memory, for reading and writing many
+ * pixels without a native call per pixel.
+ * <p>
+ * The raster is laid out like the native PIX data: each row is
+ * <code>getStride()</code> bytes of 32-bit words in native byte order, with
+ * the first pixel of a word in its most significant bits. Samples are the raw
+ * values of the given depth, not {@link android.graphics.Color} values; a
+ * 32bpp sample is 0xRRGGBBAA.
+ * <p>
+ * A raster is a copy. Changes are not seen by the Pix it was read from until
+ * the raster is written back with {@link #toPix()}, and the raster stays valid
+ * after the Pix is recycled.
+ */
+public class PixRaster {
+    private final ByteBuffer mBuffer;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mDepth;
+    private final int mStride;
+
+    /**
+     * Creates a raster over raw Pix data obtained from Pix.getData().
+     *
+     * @param data Raw pix data. Not copied.
+     * @param width The width of the Pix.
+     * @param height The height of the Pix.
+     * @param depth The bit-depth of the Pix, one of 1, 2, 4, 8, 16, or 32.
+     */
+    public PixRaster(byte[] data, int width, int height, int depth) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data array must be non-null");
+        } else if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Pix width and height must be > 0");
+        } else if (depth != 1 && depth != 2 && depth != 4 && depth != 8 && depth != 16
+                && depth != 32) {
+            throw new IllegalArgumentException("Depth must be one of 1, 2, 4, 8, 16, or 32");
+        }
+
+        // Rows are padded to whole 32-bit words
+        int stride = 4 * ((width * depth + 31) / 32);
+
+        if (data.length < stride * height) {
+            throw new IllegalArgumentException("Data array must be large enough to hold image bytes");
+        }
+
+        mBuffer = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder());
+        mWidth = width;
+        mHeight = height;
+        mDepth = depth;
+        mStride = stride;
+    }
+
+    /**
+     * Returns the raster as a ByteBuffer in native byte order. Use
+     * getStride() to find the start of each row.
+     *
+     * @return the raster
+     */
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Returns the width of the raster.
+     *
+     * @return the width of the raster
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the height of the raster.
+     *
+     * @return the height of the raster
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the bit-depth of the raster.
+     *
+     * @return the bit-depth of the raster
+     */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * Returns the number of bytes per row, including padding.
+     *
+     * @return the number of bytes per row
+     */
+    public int getStride() {
+        return mStride;
+    }
+
+    /**
+     * Returns the raw sample at the specified location.
+     *
+     * @param x The x coordinate (0...width-1) of the pixel to return.
+     * @param y The y coordinate (0...height-1) of the pixel to return.
+     * @return the sample at the specified coordinate
+     * @throws IllegalArgumentException If x, y exceeds the image bounds.
+     */
+    public int getSample(int x, int y) {
+        checkBounds(x, y, 1, 1);
+
+        return sample(x, y);
+    }
+
+    /**
+     * Sets the raw sample at the specified location.
+     *
+     * @param x The x coordinate (0...width-1) of the pixel to set.
+     * @param y The y coordinate (0...height-1) of the pixel to set.
+     * @param value The sample to set, masked to the depth of the raster.
+     * @throws IllegalArgumentException If x, y exceeds the image bounds.
+     */
+    public void setSample(int x, int y, int value) {
+        checkBounds(x, y, 1, 1);
+
+        putSample(x, y, value);
+    }
+
+    /**
+     * Fills an array with the samples of a row.
+     *
+     * @param y The row to read.
+     * @param samples The array to fill. Must be at least width elements.
+     */
+    public void getRow(int y, int[] samples) {
+        getRegion(0, y, mWidth, 1, samples);
+    }
+
+    /**
+     * Sets the samples of a row.
+     *
+     * @param y The row to write.
+     * @param samples The samples to set. Must be at least width elements.
+     */
+    public void setRow(int y, int[] samples) {
+        setRegion(0, y, mWidth, 1, samples);
+    }
+
+    /**
+     * Fills an array with the samples of a region, row by row.
+     *
+     * @param x The left edge of the region.
+     * @param y The top edge of the region.
+     * @param w The width of the region.
+     * @param h The height of the region.
+     * @param samples The array to fill. Must be at least w * h elements.
+     */
+    public void getRegion(int x, int y, int w, int h, int[] samples) {
+        checkBounds(x, y, w, h);
+        checkLength(samples, w * h);
+
+        int i = 0;
+
+        for (int row = y; row < y + h; row++) {
+            for (int col = x; col < x + w; col++) {
+                samples[i++] = sample(col, row);
+            }
+        }
+    }
+
+    /**
+     * Sets the samples of a region, row by row.
+     *
+     * @param x The left edge of the region.
+     * @param y The top edge of the region.
+     * @param w The width of the region.
+     * @param h The height of the region.
+     * @param samples The samples to set. Must be at least w * h elements.
+     */
+    public void setRegion(int x, int y, int w, int h, int[] samples) {
+        checkBounds(x, y, w, h);
+        checkLength(samples, w * h);
+
+        int i = 0;
+
+        for (int row = y; row < y + h; row++) {
+            for (int col = x; col < x + w; col++) {
+                putSample(col, row, samples[i++]);
+            }
+        }
+    }
+
+    /**
+     * Creates a new Pix from this raster.
+     *
+     * @return a new Pix holding a copy of this raster
+     */
+    public Pix toPix() {
+        byte[] data = mBuffer.array();
+        int size = mStride * mHeight;
+
+        // The native side copies the whole array, a reused larger one would
+        // overflow the new raster.
+        if (data.length != size) {
+            byte[] exact = new byte[size];
+            System.arraycopy(data, 0, exact, 0, size);
+            data = exact;
+        }
+
+        return Pix.createFromPix(data, mWidth, mHeight, mDepth);
+    }
+
+    private int sample(int x, int y) {
+        int bit = x * mDepth;
+        int word = mBuffer.getInt(y * mStride + 4 * (bit >> 5));
+
+        if (mDepth == 32) {
+            return word;
+        }
+
+        int shift = 32 - mDepth - (bit & 31);
+
+        return (word >>> shift) & ((1 << mDepth) - 1);
+    }
+
+    private void putSample(int x, int y, int value) {
+        int bit = x * mDepth;
+        int offset = y * mStride + 4 * (bit >> 5);
+
+        if (mDepth == 32) {
+            mBuffer.putInt(offset, value);
+            return;
+        }
+
+        int shift = 32 - mDepth - (bit & 31);
+        int mask = ((1 << mDepth) - 1) << shift;
+        int word = mBuffer.getInt(offset);
+
+        mBuffer.putInt(offset, (word & ~mask) | ((value << shift) & mask));
+    }
+
+    private void checkBounds(int x, int y, int w, int h) {
+        if (x < 0 || w < 0 || x + w > mWidth) {
+            throw new IllegalArgumentException("Supplied x coordinate exceeds image bounds");
+        } else if (y < 0 || h < 0 || y + h > mHeight) {
+            throw new IllegalArgumentException("Supplied y coordinate exceeds image bounds");
+        }
+    }
+
+    private static void checkLength(int[] samples, int length) {
+        if (samples == null || samples.length < length) {
+            throw new IllegalArgumentException("Sample array must hold every pixel of the region");
+        }
+    }
+}
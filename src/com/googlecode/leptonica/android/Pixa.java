@@ -88,6 +88,9 @@ public class Pixa {
         mWidth = width;
         mHeight = height;
         mRecycled = false;
+
+        NativeMemory.pixaAllocated();
+        NativeLeakTracker.allocated(this);
     }
 
     /**
@@ -149,22 +152,18 @@ public class Pixa {
      * access or modify the Pixa after calling this method.
      * <p>
      * Any Pix obtained from this Pixa or copies of this Pixa will still be
-     * accessible until they are explicitly recycled or finalized by the garbage
-     * collector.
+     * accessible until they are explicitly recycled. Pixa has no finalizer, so
+     * a Pixa that is never recycled leaks its native memory.
      */
     public synchronized void recycle() {
         if (!mRecycled) {
             nativeDestroy(mNativePixa);
 
             mRecycled = true;
-        }
-    }
 
-    @Override
-    protected void finalize() throws Throwable {
-        recycle();
-
-        super.finalize();
+            NativeMemory.pixaReleased();
+            NativeLeakTracker.released(this);
+        }
     }
 
     /**
@@ -329,34 +328,89 @@ public class Pixa {
     }
 
     /**
-     * Returns an ArrayList of Box bounding Rects.
+     * Returns the geometry of every Box in this Pixa as one flat array, four
+     * elements per Box in Box.INDEX_* order: x, y, w, h of the first Box,
+     * then of the second, and so on.
      *
-     * @return an ArrayList of Box bounding Rects
+     * @return the geometry of every Box
      */
-    public ArrayList<Rect> getBoxRects() {
+    public int[] getBoxGeometries() {
+        int[] geometries = new int[4 * nativeGetCount(mNativePixa)];
+
+        getBoxGeometries(geometries);
+
+        return geometries;
+    }
+
+    /**
+     * Fills an array with the geometry of every Box in this Pixa, four
+     * elements per Box in Box.INDEX_* order. The array may be reused between
+     * calls, so sorting and merging code need not allocate per Box.
+     * <p>
+     * Boxes whose geometry can't be read are filled with zeros.
+     *
+     * @param geometries The array to fill. Must be at least four times the
+     *            size of this Pixa.
+     * @return the number of boxes filled in
+     */
+    public int getBoxGeometries(int[] geometries) {
         int pixaCount = nativeGetCount(mNativePixa);
-        int[] buffer = new int[4];
 
-        ArrayList<Rect> rects = new ArrayList<Rect>(pixaCount);
+        if (geometries == null || geometries.length < 4 * pixaCount) {
+            throw new IllegalArgumentException("Geometry array must hold four elements per box");
+        }
 
-        int x;
-        int y;
-        Rect bound;
+        int[] buffer = new int[4];
 
         for (int i = 0; i < pixaCount; i++) {
-            getBoxGeometry(i, buffer);
+            if (!nativeGetBoxGeometry(mNativePixa, i, buffer)) {
+                buffer[Box.INDEX_X] = 0;
+                buffer[Box.INDEX_Y] = 0;
+                buffer[Box.INDEX_W] = 0;
+                buffer[Box.INDEX_H] = 0;
+            }
+
+            System.arraycopy(buffer, 0, geometries, 4 * i, 4);
+        }
 
-            x = buffer[Box.INDEX_X];
-            y = buffer[Box.INDEX_Y];
+        return pixaCount;
+    }
 
-            bound = new Rect(x, y, x + buffer[Box.INDEX_W], y + buffer[Box.INDEX_H]);
+    /**
+     * Returns an ArrayList of Box bounding Rects.
+     *
+     * @return an ArrayList of Box bounding Rects
+     */
+    public ArrayList<Rect> getBoxRects() {
+        int[] geometries = getBoxGeometries();
+        int pixaCount = geometries.length / 4;
 
-            rects.add(bound);
+        ArrayList<Rect> rects = new ArrayList<Rect>(pixaCount);
+
+        for (int i = 0; i < pixaCount; i++) {
+            rects.add(toRect(geometries, i));
         }
 
         return rects;
     }
 
+    /**
+     * Returns a bounding Rect for one Box of a flat geometry array, as filled
+     * by getBoxGeometries().
+     *
+     * @param geometries The geometry of every Box.
+     * @param index The index of the Box.
+     * @return a bounding Rect for the Box at the specified index
+     */
+    public static Rect toRect(int[] geometries, int index) {
+        int offset = 4 * index;
+        int x = geometries[offset + Box.INDEX_X];
+        int y = geometries[offset + Box.INDEX_Y];
+
+        return new Rect(x, y, x + geometries[offset + Box.INDEX_W],
+                y + geometries[offset + Box.INDEX_H]);
+    }
+
     /**
      * Replaces the Pix and Box at the specified index with the specified Pix
      * and Box, both of which may be recycled after calling this method.
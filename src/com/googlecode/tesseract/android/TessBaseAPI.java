@@ -237,7 +237,10 @@ public class TessBaseAPI {
             throw new RuntimeException("Failed to read image file");
         }
 
+        // Tesseract keeps its own clone of the pix
         nativeSetImagePix(image.getNativePix());
+
+        image.recycle();
     }
 
     /**
@@ -254,7 +257,10 @@ public class TessBaseAPI {
             throw new RuntimeException("Failed to read bitmap");
         }
 
+        // Tesseract keeps its own clone of the pix
         nativeSetImagePix(image.getNativePix());
+
+        image.recycle();
     }
 
     /**